@@ -20,6 +20,11 @@ package com.example.android.bookfinder;
  */
 public class Book {
 
+    /**
+     * Volume id of the book in the Google Books API
+     */
+    private String id;
+
     /**
      * Title of the book
      */
@@ -48,13 +53,15 @@ public class Book {
     /**
      * Constructs a new {@link Book} object.
      *
+     * @param iid        volume id of book
      * @param ttitle     title of book
      * @param aauthor    author of book
      * @param iimageUrl  url of thumbnail url
      * @param bbookUrl   is the website URL to find more details about the book
      * @param bbookPrice is the price of the book
      */
-    public Book(String ttitle, String aauthor, String iimageUrl, String bbookUrl, String bbookPrice) {
+    public Book(String iid, String ttitle, String aauthor, String iimageUrl, String bbookUrl, String bbookPrice) {
+        id = iid;
         title = ttitle;
         author = aauthor;
         imageUrl = iimageUrl;
@@ -62,6 +69,10 @@ public class Book {
         bookPrice = bbookPrice;
     }
 
+    public String getId() {
+        return id;
+    }
+
     public String getTitle() {
         return title;
     }
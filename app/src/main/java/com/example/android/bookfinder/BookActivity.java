@@ -18,9 +18,11 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -28,7 +30,8 @@ import java.util.List;
 import butterknife.BindView;
 import butterknife.ButterKnife;
 
-public class BookActivity extends AppCompatActivity implements LoaderCallbacks<List<Book>>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class BookActivity extends AppCompatActivity implements LoaderCallbacks<BookPage>,
+        BookLoader.BatchListener, SharedPreferences.OnSharedPreferenceChangeListener {
 
     private static final String TAG = BookActivity.class.getName();
 
@@ -43,7 +46,22 @@ public class BookActivity extends AppCompatActivity implements LoaderCallbacks<L
     @BindView(R.id.list) ListView bookListView;
     @BindView(R.id.loading_indicator) View loadingIndicator;
     private BookAdapter adapter;
+    private DetailPrefetcher detailPrefetcher;
+
+    /**
+     * Updates the list whenever books arrive in the adapter's {@link BookWindow}
+     */
+    private final BookWindow.Listener windowListener = new BookWindow.Listener() {
+        @Override
+        public void onWindowChanged() {
+            adapter.notifyDataSetChanged();
+            if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_IDLE) {
+                prefetchVisibleDetails();
+            }
+        }
+    };
     private String searchQuery = "";
+    private int scrollState = AbsListView.OnScrollListener.SCROLL_STATE_IDLE;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -54,32 +72,76 @@ public class BookActivity extends AppCompatActivity implements LoaderCallbacks<L
 
         bookListView.setEmptyView(emptyStateTextView);
 
-        adapter = new BookAdapter(this, new ArrayList<Book>());
+        adapter = new BookAdapter(this);
 
         // Set the adapter on the {@link ListView}
         // so the list can be populated in the user interface
         bookListView.setAdapter(adapter);
 
+        detailPrefetcher = DetailPrefetcher.get(this);
+
+        // Keep only the pages around the visible rows in memory, and prefetch the
+        // details of the rows the list comes to rest on
+        bookListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int sscrollState) {
+                scrollState = sscrollState;
+                BookWindow window = adapter.getWindow();
+                if (window != null) {
+                    window.setIdle(scrollState == SCROLL_STATE_IDLE);
+                }
+                if (scrollState == SCROLL_STATE_IDLE) {
+                    prefetchVisibleDetails();
+                } else {
+                    detailPrefetcher.onScrolling();
+                }
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                BookWindow window = adapter.getWindow();
+                if (window != null) {
+                    window.onVisibleRangeChanged(firstVisibleItem, visibleItemCount);
+                }
+            }
+        });
+
         // Obtain a reference to the SharedPreferences file for this app
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
         // And register to be notified of preference changes
         // So we know when the user has adjusted the query settings
         prefs.registerOnSharedPreferenceChangeListener(this);
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website with more information about the selected earthquake.
+        // Keep the results of frequent queries warm while the device is charging or idle
+        CacheWarmingJobService.schedule(this);
+
+        // Set an item click listener on the ListView, which opens the details of the selected book.
         bookListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
                 Book currentBook = adapter.getItem(position);
+                if (currentBook == null) {
+                    // Still loading, nothing to open yet, unless loading failed and can be retried
+                    BookWindow window = adapter.getWindow();
+                    if (window != null && window.isFailed(position)) {
+                        window.retry();
+                    }
+                    return;
+                }
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri bookUri = Uri.parse(currentBook.getBookUrl());
+                if (currentBook.getId() == null) {
+                    // Without a volume id there are no details, send an intent to a web browser
+                    // to open a website with more information about the selected book instead.
+                    Uri bookUri = Uri.parse(currentBook.getBookUrl());
+                    startActivity(new Intent(Intent.ACTION_VIEW, bookUri));
+                    return;
+                }
 
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, bookUri);
+                Intent detailIntent = new Intent(BookActivity.this, DetailActivity.class);
+                detailIntent.putExtra(DetailActivity.EXTRA_BOOK_ID, currentBook.getId());
 
                 // Send the intent to launch a new activity
-                startActivity(websiteIntent);
+                startActivity(detailIntent);
             }
         });
 
@@ -91,7 +153,10 @@ public class BookActivity extends AppCompatActivity implements LoaderCallbacks<L
             // Initialize the loader. Pass in the int ID constant defined above and pass in null for
             // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
             // because this activity implements the LoaderCallbacks interface).
-            loaderManager.initLoader(BOOK_LOADER_ID, null, this);
+            Loader<BookPage> loader = loaderManager.initLoader(BOOK_LOADER_ID, null, this);
+
+            // The loader may be retained from before a configuration change, so hook it up again
+            ((BookLoader) loader).setBatchListener(this);
         } else {
             // Otherwise, display error
             // First, hide loading indicator so error message will be visible
@@ -125,7 +190,8 @@ public class BookActivity extends AppCompatActivity implements LoaderCallbacks<L
                 }
 
                 // Restart the loader to requery as the query settings have been updated
-                getLoaderManager().restartLoader(BOOK_LOADER_ID, bundle, this);
+                Loader<BookPage> loader = getLoaderManager().restartLoader(BOOK_LOADER_ID, bundle, this);
+                ((BookLoader) loader).setRequested(true);
             } else {
                 // First, hide loading indicator so error message will be visible
                 loadingIndicator.setVisibility(View.GONE);
@@ -138,7 +204,7 @@ public class BookActivity extends AppCompatActivity implements LoaderCallbacks<L
     }
 
     @Override
-    public Loader<List<Book>> onCreateLoader(int i, Bundle bundle) {
+    public Loader<BookPage> onCreateLoader(int i, Bundle bundle) {
         SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
         String maxResults = sharedPrefs.getString(
                 getString(R.string.settings_max_results_key),
@@ -163,32 +229,93 @@ public class BookActivity extends AppCompatActivity implements LoaderCallbacks<L
         uriBuilder.appendQueryParameter("maxResults", maxResults);
         uriBuilder.appendQueryParameter("orderBy", orderBy);
         Log.d(TAG, uriBuilder.toString());
-        return new BookLoader(this, uriBuilder.toString());
+        QueryStats.get(this).recordQuery(uriBuilder.toString());
+        BookLoader loader = new BookLoader(this, uriBuilder.toString());
+        loader.setBatchListener(this);
+        return loader;
+    }
+
+    @Override
+    public void onBatchLoaded(BookLoader loader, List<Book> batch) {
+        // Ignore batches of a loader that was replaced by a newer query
+        if (loader != getLoaderManager().getLoader(BOOK_LOADER_ID)) {
+            return;
+        }
+
+        BookWindow window = adapter.getWindow();
+        if (window == null || !window.isStreaming()) {
+            // First batch of this load, show the rows right away instead of the loading indicator
+            loadingIndicator.setVisibility(View.GONE);
+            window = new BookWindow(this, loader.getUrl(), windowListener);
+            adapter.setWindow(window);
+        }
+
+        // Append the books to the adapter's data set. This will trigger the ListView to update.
+        window.append(batch);
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Book>> loader, List<Book> books) {
+    public void onLoadFinished(Loader<BookPage> loader, BookPage page) {
         // Hide loading indicator because the data has been loaded
         loadingIndicator.setVisibility(View.GONE);
 
-        emptyStateTextView.setText(R.string.no_books);
+        // No page at all means the request failed, an empty one that nothing matched
+        emptyStateTextView.setText(page == null ? R.string.load_failed : R.string.no_books);
 
-        // Clear the adapter of previous data
-        adapter.clear();
-
-        // If there is a valid list of {@link Book}s, then add them to the adapter's
+        // If there is a valid page of {@link Book}s, then make it the first page of the adapter's
         // data set. This will trigger the ListView to update.
-        if (books != null && !books.isEmpty()) {
-            adapter.addAll(books);
+        if (page != null && !page.getBooks().isEmpty()) {
+            BookWindow window = adapter.getWindow();
+            String url = ((BookLoader) loader).getUrl();
+            if (window != null && window.isStreaming()) {
+                // The rows arrived in batches already, now the full result set is known
+                window.complete(page);
+            } else if (window != null && url.equals(window.getQueryUrl())) {
+                // Same results again, keep the pages and short pages the window knows about
+                return;
+            } else {
+                adapter.setWindow(new BookWindow(this, url, page, windowListener));
+            }
+
+            // A new result set, prefetch the rows it opens with once they are laid out
+            detailPrefetcher.reset(url);
+            bookListView.post(new Runnable() {
+                @Override
+                public void run() {
+                    prefetchVisibleDetails();
+                }
+            });
+        } else {
+            BookWindow window = adapter.getWindow();
+            if (page == null && window != null && window.isStreaming() && window.getCount() > 0) {
+                // The download broke off after some rows were shown, keep them
+                window.abort();
+                Toast.makeText(this, R.string.load_failed_partially, Toast.LENGTH_LONG).show();
+                return;
+            }
+
+            // Clear the adapter of previous data
+            adapter.clear();
         }
     }
 
     @Override
-    public void onLoaderReset(Loader<List<Book>> loader) {
+    public void onLoaderReset(Loader<BookPage> loader) {
         // Loader reset, so we can clear out our existing data.
         adapter.clear();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // The loader outlives this activity across configuration changes, do not leak it
+        Loader<BookPage> loader = getLoaderManager().getLoader(BOOK_LOADER_ID);
+        if (loader != null) {
+            ((BookLoader) loader).setBatchListener(null);
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu, menu);
@@ -248,7 +375,8 @@ public class BookActivity extends AppCompatActivity implements LoaderCallbacks<L
             loadingIndicator.setVisibility(View.VISIBLE);
 
             // Restart the loader to requery as the query settings have been updated
-            getLoaderManager().restartLoader(BOOK_LOADER_ID, bundle, this);
+            Loader<BookPage> loader = getLoaderManager().restartLoader(BOOK_LOADER_ID, bundle, this);
+            ((BookLoader) loader).setRequested(true);
         } else {
             // First, hide loading indicator so error message will be visible
             loadingIndicator.setVisibility(View.GONE);
@@ -259,6 +387,20 @@ public class BookActivity extends AppCompatActivity implements LoaderCallbacks<L
         }
     }
 
+    /**
+     * Hands the books on screen to the {@link DetailPrefetcher}.
+     */
+    private void prefetchVisibleDetails() {
+        List<Book> visible = new ArrayList<>();
+        for (int i = bookListView.getFirstVisiblePosition(); i <= bookListView.getLastVisiblePosition(); i++) {
+            Book book = adapter.getItem(i);
+            if (book != null) {
+                visible.add(book);
+            }
+        }
+        detailPrefetcher.onRowsSettled(visible);
+    }
+
     private boolean checkNetwork() {
         // Get a reference to the ConnectivityManager to check state of network connectivity
         ConnectivityManager conMgr = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
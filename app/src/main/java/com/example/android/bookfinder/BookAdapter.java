@@ -5,34 +5,81 @@ import android.support.annotation.NonNull;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.ImageView;
-import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
-import java.util.List;
-
 import butterknife.BindView;
 import butterknife.ButterKnife;
 
 /**
  * An {@link com.example.android.bookfinder.BookAdapter} knows how to create a list item layout for each book
- * in the data source (a list of {@link Book} objects).
+ * in the data source (a {@link BookWindow} of {@link Book} objects).
  * <p>
  * These list item layouts will be provided to an adapter view like ListView
  * to be displayed to the user.
  */
-public class BookAdapter extends ArrayAdapter<Book> {
+public class BookAdapter extends BaseAdapter {
+
+    private final Context context;
+
+    /**
+     * Data source of the adapter, null while there are no results
+     */
+    private BookWindow window;
 
     /**
      * Constructs a new {@link com.example.android.bookfinder.BookAdapter}.
      *
-     * @param context of the app
-     * @param books   is the list of books, which is the data source of the adapter
+     * @param ccontext of the app
      */
-    public BookAdapter(Context context, List<Book> books) {
-        super(context, 0, books);
+    public BookAdapter(Context ccontext) {
+        context = ccontext;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * Replaces the data source of the adapter, releasing the previous one.
+     */
+    public void setWindow(BookWindow wwindow) {
+        if (window != null) {
+            window.release();
+        }
+        window = wwindow;
+        notifyDataSetChanged();
+    }
+
+    public BookWindow getWindow() {
+        return window;
+    }
+
+    /**
+     * Removes all books from the adapter.
+     */
+    public void clear() {
+        setWindow(null);
+    }
+
+    @Override
+    public int getCount() {
+        return window == null ? 0 : window.getCount();
+    }
+
+    /**
+     * Returns the book at the given position, or null while its page is still loading.
+     */
+    @Override
+    public Book getItem(int position) {
+        return window == null ? null : window.getItem(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
     }
 
     /**
@@ -55,17 +102,29 @@ public class BookAdapter extends ArrayAdapter<Book> {
             holder = (ViewHolder) listItemView.getTag();
         }
 
+        // The text layouts are built for the width of the list
+        TextLayouts textLayouts = TextLayouts.get(getContext());
+        textLayouts.setListWidth(parent.getWidth());
+
         // Find the book at the given position in the list of books
         Book currentBook = getItem(position);
+        if (currentBook == null) {
+            // Its page is being loaded, the adapter is notified once it is there or failed
+            holder.titleView.setTextLayout(window.isFailed(position)
+                    ? textLayouts.getLoadFailed() : textLayouts.getLoading());
+            holder.authorView.setTextLayout(null);
+            holder.genreView.setTextLayout(null);
+            Picasso.with(getContext()).cancelRequest(holder.thumbnailView);
+            holder.thumbnailView.setImageResource(R.drawable.placeholder_book);
+            return listItemView;
+        }
 
-        // Display the title of the current book in that TextView
-        holder.titleView.setText(currentBook.getTitle());
-
-        // Display the author of the current book in that TextView
-        holder.authorView.setText(currentBook.getAuthor());
-
-        // Display the genre of the current book in that TextView
-        holder.genreView.setText(currentBook.getBookPrice());
+        // Attach the title, author and price of the current book, laid out ahead of time
+        TextLayouts.RowLayouts layouts = textLayouts.get(currentBook);
+        // Read out the title as it was written, not upper-cased
+        holder.titleView.setTextLayout(layouts.getTitle(), currentBook.getTitle());
+        holder.authorView.setTextLayout(layouts.getAuthor());
+        holder.genreView.setTextLayout(layouts.getPrice());
 
         //holder.thumbnailView.setImageURI();
         Picasso.with(getContext()).load(currentBook.getImageUrl()).placeholder(R.drawable.placeholder_book).into(holder.thumbnailView);
@@ -76,11 +135,11 @@ public class BookAdapter extends ArrayAdapter<Book> {
 
     static class ViewHolder {
         @BindView(R.id.book_title)
-        TextView titleView;
+        LayoutView titleView;
         @BindView(R.id.book_author)
-        TextView authorView;
+        LayoutView authorView;
         @BindView(R.id.book_genre)
-        TextView genreView;
+        LayoutView genreView;
         @BindView(R.id.book_thumbnail)
         ImageView thumbnailView;
 
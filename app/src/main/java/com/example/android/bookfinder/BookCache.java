@@ -0,0 +1,241 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disk cache of raw JSON responses from the Google Books API, keyed by request URL.
+ * <p>
+ * Each entry remembers when it was written and whether it was written by the
+ * {@link CacheWarmer} in the background or by a regular foreground load.
+ */
+public final class BookCache {
+    private static final String TAG = BookCache.class.getSimpleName();
+
+    /**
+     * Entries older than this are not served to the UI anymore
+     */
+    public static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(12);
+
+    /**
+     * Upper bound of the total size of the cache directory on disk
+     */
+    private static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Number of writes after which the cache is trimmed, so it stays bounded even when
+     * the cache warming never runs
+     */
+    private static final int WRITES_PER_TRIM = 20;
+
+    private static final String CACHE_DIR = "books";
+    private static final String HEADER_WARMED = "warmed";
+    private static final String HEADER_FOREGROUND = "foreground";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static BookCache instance;
+
+    private final File directory;
+
+    /**
+     * Starts one short of a trim, so the first write of every process trims as well
+     */
+    private int writesSinceTrim = WRITES_PER_TRIM - 1;
+
+    private BookCache(File ddirectory) {
+        directory = ddirectory;
+    }
+
+    /**
+     * Returns the shared {@link BookCache} of the app.
+     */
+    public static synchronized BookCache get(Context context) {
+        if (instance == null) {
+            instance = new BookCache(new File(context.getApplicationContext().getCacheDir(), CACHE_DIR));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached response for the given URL, or null if there is none.
+     * Stale entries are returned as well, use {@link Entry#isStale()} to check.
+     */
+    public synchronized Entry read(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            String header = reader.readLine();
+            StringBuilder json = new StringBuilder();
+            String line = reader.readLine();
+            while (line != null) {
+                json.append(line);
+                line = reader.readLine();
+            }
+            return new Entry(json.toString(), file.lastModified(), HEADER_WARMED.equals(header));
+        } catch (IOException e) {
+            Log.e(TAG, "Problem reading cache entry for " + url, e);
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Stores the JSON response of the given URL.
+     *
+     * @param warmed true if the response was fetched by the background cache warming
+     */
+    public synchronized void write(String url, String json, boolean warmed) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Unable to create cache directory " + directory);
+            return;
+        }
+
+        File file = fileFor(url);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+            writer.write(warmed ? HEADER_WARMED : HEADER_FOREGROUND);
+            writer.write('\n');
+            writer.write(json);
+        } catch (IOException e) {
+            Log.e(TAG, "Problem writing cache entry for " + url, e);
+        } finally {
+            closeQuietly(writer);
+        }
+
+        if (++writesSinceTrim >= WRITES_PER_TRIM) {
+            trim();
+        }
+    }
+
+    /**
+     * Marks the entry of the given URL as a foreground one, once the warmed response was
+     * used. It keeps its age.
+     */
+    public synchronized void clearWarmed(String url) {
+        File file = fileFor(url);
+        Entry entry = read(url);
+        if (entry == null || !entry.isWarmed()) {
+            return;
+        }
+        long writtenAt = file.lastModified();
+        write(url, entry.getJson(), false);
+        if (!file.setLastModified(writtenAt)) {
+            Log.w(TAG, "Unable to keep the age of cache entry " + file);
+        }
+    }
+
+    /**
+     * Deletes the oldest entries until the cache fits into {@link #MAX_DISK_BYTES},
+     * and every entry that is too old to be served anymore.
+     */
+    public synchronized void trim() {
+        writesSinceTrim = 0;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Newest first, so everything after the budget is used up gets deleted
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = b.lastModified() - a.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+            if (total > MAX_DISK_BYTES || now - file.lastModified() > MAX_AGE_MILLIS) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Unable to delete cache entry " + file);
+                }
+            }
+        }
+    }
+
+    private File fileFor(String url) {
+        return new File(directory, hash(url));
+    }
+
+    private static String hash(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(url.getBytes(UTF_8));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device ships SHA-1, fall back to something that still works
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Problem closing cache file", e);
+            }
+        }
+    }
+
+    /**
+     * A single cached response.
+     */
+    public static class Entry {
+        private final String json;
+        private final long writtenAt;
+        private final boolean warmed;
+
+        Entry(String jjson, long wwrittenAt, boolean wwarmed) {
+            json = jjson;
+            writtenAt = wwrittenAt;
+            warmed = wwarmed;
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+        public long getAgeMillis() {
+            return System.currentTimeMillis() - writtenAt;
+        }
+
+        public boolean isStale() {
+            return getAgeMillis() > MAX_AGE_MILLIS;
+        }
+
+        public boolean isWarmed() {
+            return warmed;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.android.bookfinder;
+
+/**
+ * A {@link BookDetail} object contains everything the volumes/{id} endpoint tells about
+ * a single book, as shown by the {@link DetailActivity}.
+ */
+public class BookDetail {
+
+    /**
+     * Volume id of the book
+     */
+    private String id;
+
+    /**
+     * Title and subtitle of the book
+     */
+    private String title;
+    private String subtitle;
+
+    /**
+     * All authors of the book, comma separated
+     */
+    private String authors;
+
+    /**
+     * Publisher and publishing date of the book
+     */
+    private String publisher;
+    private String publishedDate;
+
+    /**
+     * Description of the book, may contain simple HTML
+     */
+    private String description;
+
+    /**
+     * Number of pages of the book, 0 if unknown
+     */
+    private int pageCount;
+
+    /**
+     * Image URL of the book
+     */
+    private String imageUrl;
+
+    /**
+     * Website URL of the book
+     */
+    private String bookUrl;
+
+    /**
+     * Price of book
+     */
+    private String bookPrice;
+
+    /**
+     * Constructs a new {@link BookDetail} object.
+     *
+     * @param iid             volume id of book
+     * @param ttitle          title of book
+     * @param ssubtitle       subtitle of book, may be null
+     * @param aauthors        all authors of book
+     * @param ppublisher      publisher of book, may be null
+     * @param ppublishedDate  publishing date of book, may be null
+     * @param ddescription    description of book, may be null
+     * @param ppageCount      number of pages of book
+     * @param iimageUrl       url of thumbnail
+     * @param bbookUrl        is the website URL to find more details about the book
+     * @param bbookPrice      is the price of the book
+     */
+    public BookDetail(String iid, String ttitle, String ssubtitle, String aauthors, String ppublisher,
+                      String ppublishedDate, String ddescription, int ppageCount, String iimageUrl,
+                      String bbookUrl, String bbookPrice) {
+        id = iid;
+        title = ttitle;
+        subtitle = ssubtitle;
+        authors = aauthors;
+        publisher = ppublisher;
+        publishedDate = ppublishedDate;
+        description = ddescription;
+        pageCount = ppageCount;
+        imageUrl = iimageUrl;
+        bookUrl = bbookUrl;
+        bookPrice = bbookPrice;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getSubtitle() {
+        return subtitle;
+    }
+
+    public String getAuthors() {
+        return authors;
+    }
+
+    public String getPublisher() {
+        return publisher;
+    }
+
+    public String getPublishedDate() {
+        return publishedDate;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public String getBookUrl() {
+        return bookUrl;
+    }
+
+    public String getBookPrice() {
+        return bookPrice;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.android.bookfinder;
+
+import android.app.Application;
+import android.content.res.Configuration;
+
+import com.squareup.picasso.Picasso;
+
+/**
+ * Sets up the app wide caches and passes system memory pressure on to the {@link MemoryBudget}.
+ */
+public class BookFinderApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Let every Picasso.with() use a memory cache that is part of the budget
+        MemoryBudget budget = MemoryBudget.get(this);
+        Picasso.setSingletonInstance(new Picasso.Builder(this)
+                .memoryCache(new ThumbnailCache(budget))
+                .build());
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // Text sizes depend on the font scale, the list width on the orientation
+        TextLayouts.get(this).onConfigurationChanged();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryBudget.get(this).onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        MemoryBudget.get(this).onLowMemory();
+    }
+}
@@ -2,17 +2,51 @@ package com.example.android.bookfinder;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import java.util.List;
 
 /**
- * Loads a list of books by using an AsyncTask to perform the
+ * Loads the first page of books by using an AsyncTask to perform the
  * network request to the given URL.
+ * <p>
+ * While the response downloads, the books parsed so far are published to the
+ * {@link BatchListener} in small batches, before the complete page is delivered.
+ * <p>
+ * The page is kept, so coming back to the activity delivers it again instead of
+ * loading it anew.
  */
-public class BookLoader extends AsyncTaskLoader<List<Book>> {
+public class BookLoader extends AsyncTaskLoader<BookPage> {
     private static final String TAG = BookLoader.class.getName();
 
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
     private String url;
+    private volatile BatchListener batchListener;
+    private long startedAt;
+
+    /**
+     * Whether the user asked for this load with a search or a change of the settings
+     */
+    private boolean requested;
+
+    /**
+     * Whether the current load went to the network, which is when it streams batches
+     */
+    private volatile boolean fromNetwork;
+
+    /**
+     * The last page delivered, null until one was loaded
+     */
+    private BookPage result;
+
+    /**
+     * When the first batch of the current load reached the listener, 0 if none did yet.
+     * Only used on the UI thread.
+     */
+    private long firstBatchAt;
 
     /**
      * Constructs a new {@link BookLoader}.
@@ -25,21 +59,124 @@ public class BookLoader extends AsyncTaskLoader<List<Book>> {
         url = uurl;
     }
 
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Marks this load as asked for by the user, with a search or a change of the settings.
+     * Only those and loads that went to the network are timed, the others are served
+     * from the caches and would make searches look faster than users see them.
+     */
+    public void setRequested(boolean rrequested) {
+        requested = rrequested;
+    }
+
+    /**
+     * Sets the listener that receives the batches on the UI thread, or null to stop receiving them.
+     */
+    public void setBatchListener(BatchListener listener) {
+        batchListener = listener;
+    }
+
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        if (result != null) {
+            deliverResult(result);
+        }
+        if (takeContentChanged() || result == null) {
+            startedAt = SystemClock.elapsedRealtime();
+            firstBatchAt = 0;
+            fromNetwork = false;
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+        result = null;
+    }
+
+    /**
+     * Records the time to the first row and the time to the complete page of this load,
+     * which differ when the books were delivered in batches. This is on the UI thread.
+     */
+    @Override
+    public void deliverResult(BookPage page) {
+        if (isReset()) {
+            return;
+        }
+        if (page == result) {
+            // The kept page delivered again, there is nothing new to time
+            super.deliverResult(page);
+            return;
+        }
+        result = page;
+        if (isStarted() && (requested || fromNetwork) && page != null && !page.getBooks().isEmpty()) {
+            long completeMillis = SystemClock.elapsedRealtime() - startedAt;
+            long firstRowMillis = firstBatchAt > 0 ? firstBatchAt - startedAt : completeMillis;
+            QueryStats.get(getContext()).recordLoadTiming(firstRowMillis, completeMillis);
+        }
+        super.deliverResult(page);
     }
 
     /**
      * This is on a background thread.
      */
     @Override
-    public List<Book> loadInBackground() {
+    public BookPage loadInBackground() {
         if (url == null) {
             return null;
         }
 
-        // Perform the network request, parse the response, and extract a list of books.
-        return QueryUtils.fetchBooks(url);
+        // Perform the network request (unless cached), parse the response, and extract a page of books.
+        BookPage page = BookSource.load(getContext(), url, new QueryUtils.BatchCallback() {
+            @Override
+            public void onBatch(List<Book> batch) {
+                fromNetwork = true;
+                publishBatch(batch);
+            }
+        });
+
+        // Lay out the texts of the rows while still in the background
+        if (page != null) {
+            TextLayouts.get(getContext()).precompute(page.getBooks());
+        }
+        return page;
+    }
+
+    private void publishBatch(final List<Book> batch) {
+        if (isLoadInBackgroundCanceled()) {
+            return;
+        }
+
+        // Lay out the texts of the rows before they are posted
+        TextLayouts.get(getContext()).precompute(batch);
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                BatchListener listener = batchListener;
+                if (listener != null && isStarted() && !isAbandoned()) {
+                    if (firstBatchAt == 0) {
+                        firstBatchAt = SystemClock.elapsedRealtime();
+                    }
+                    listener.onBatchLoaded(BookLoader.this, batch);
+                }
+            }
+        });
+    }
+
+    /**
+     * Receives the books of a load in batches, while the response is still downloading.
+     */
+    public interface BatchListener {
+        void onBatchLoaded(BookLoader loader, List<Book> batch);
     }
 }
@@ -0,0 +1,58 @@
+package com.example.android.bookfinder;
+
+import java.util.List;
+
+/**
+ * A {@link BookPage} is one response of the Google Books API: a slice of the books
+ * matching a query, plus the total number of matches.
+ */
+public class BookPage {
+
+    /**
+     * Books on this page
+     */
+    private List<Book> books;
+
+    /**
+     * Number of books matching the query across all pages
+     */
+    private int totalItems;
+
+    /**
+     * When the response was fetched from the network, in {@link System#currentTimeMillis()}
+     */
+    private long fetchedAt = System.currentTimeMillis();
+
+    /**
+     * Constructs a new {@link BookPage} object.
+     *
+     * @param bbooks      on this page
+     * @param ttotalItems is the number of books matching the query across all pages
+     */
+    public BookPage(List<Book> bbooks, int ttotalItems) {
+        books = bbooks;
+        totalItems = ttotalItems;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public int getTotalItems() {
+        return totalItems;
+    }
+
+    /**
+     * Sets when the response was fetched, for pages parsed from an older cached response.
+     */
+    public void setFetchedAt(long ffetchedAt) {
+        fetchedAt = ffetchedAt;
+    }
+
+    /**
+     * Returns whether the page is older than the {@link BookCache} serves responses.
+     */
+    public boolean isStale() {
+        return System.currentTimeMillis() - fetchedAt > BookCache.MAX_AGE_MILLIS;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+/**
+ * Loads pages of books and book details from the fastest place that has them: the
+ * {@link ResultCache} or {@link DetailCache} in memory, the {@link BookCache} on disk,
+ * or finally the network.
+ * <p>
+ * This may do blocking network requests, so it must be called on a background thread.
+ */
+public final class BookSource {
+
+    private static final String VOLUME_REQUEST_URL =
+            "https://www.googleapis.com/books/v1/volumes/";
+
+    /**
+     * This class is only meant to hold static methods.
+     */
+    private BookSource() {
+    }
+
+    /**
+     * Returns the URL of the given page of a query. The first page is the query URL
+     * itself, so it shares its cache entries with the cache warming.
+     *
+     * @param queryUrl including the {@code maxResults} parameter, which is the page size
+     * @param page     zero based index of the page
+     */
+    public static String pageUrl(String queryUrl, int page) {
+        if (page == 0) {
+            return queryUrl;
+        }
+        return Uri.parse(queryUrl).buildUpon()
+                .appendQueryParameter("startIndex", String.valueOf(page * pageSize(queryUrl)))
+                .build()
+                .toString();
+    }
+
+    /**
+     * Returns the number of books per page requested by the given query URL.
+     */
+    public static int pageSize(String queryUrl) {
+        String maxResults = Uri.parse(queryUrl).getQueryParameter("maxResults");
+        try {
+            return Math.max(1, Integer.parseInt(maxResults));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Returns the page behind the given URL, or null if it could not be loaded.
+     */
+    public static BookPage load(Context context, String url) {
+        return load(context, url, null);
+    }
+
+    /**
+     * Returns the page behind the given URL, or null if it could not be loaded.
+     * <p>
+     * If it has to come from the network and a callback is given, the response is parsed
+     * while it downloads and the books are handed to the callback in batches on the way.
+     * Pages from the caches are returned whole, without any batches.
+     */
+    public static BookPage load(Context context, String url, QueryUtils.BatchCallback callback) {
+        // Results of this very request that are still in memory
+        ResultCache results = ResultCache.get(context);
+        BookPage page = results.get(url);
+        if (page != null && !page.isStale()) {
+            return page;
+        }
+
+        BookCache cache = BookCache.get(context);
+        QueryStats stats = QueryStats.get(context);
+        long start = SystemClock.elapsedRealtime();
+
+        // Serve the response from the cache if it is still fresh enough
+        BookCache.Entry entry = cache.read(url);
+        if (entry != null && !entry.isStale()) {
+            if (entry.isWarmed()) {
+                // Only the first use saved a round trip, later ones a foreground load would have too
+                stats.recordWarmHit(SystemClock.elapsedRealtime() - start);
+                cache.clearWarmed(url);
+            }
+            page = QueryUtils.extractPage(entry.getJson());
+            if (page != null) {
+                page.setFetchedAt(System.currentTimeMillis() - entry.getAgeMillis());
+            }
+        } else {
+            // Perform the network request, parse the response, and extract a page of books.
+            String json;
+            if (callback == null) {
+                json = QueryUtils.fetchBookJson(url);
+                page = QueryUtils.extractPage(json);
+            } else {
+                StringBuilder rawJson = new StringBuilder();
+                page = QueryUtils.fetchPageIncrementally(url, callback, rawJson);
+                json = rawJson.toString();
+            }
+            if (!TextUtils.isEmpty(json)) {
+                stats.recordNetworkFetch(SystemClock.elapsedRealtime() - start);
+                cache.write(url, json, false);
+            }
+        }
+
+        if (page != null) {
+            results.put(url, page);
+        }
+        return page;
+    }
+
+    /**
+     * Returns the URL of the volumes/{id} endpoint for the given volume id.
+     */
+    public static String detailUrl(String id) {
+        return VOLUME_REQUEST_URL + Uri.encode(id);
+    }
+
+    /**
+     * Returns the details of the given volume, or null if they could not be loaded.
+     */
+    public static BookDetail loadDetail(Context context, String id) {
+        DetailCache details = DetailCache.get(context);
+        BookDetail detail = details.get(id);
+        if (detail != null) {
+            return detail;
+        }
+
+        String url = detailUrl(id);
+        BookCache cache = BookCache.get(context);
+        BookCache.Entry entry = cache.read(url);
+        if (entry != null && !entry.isStale()) {
+            detail = QueryUtils.extractDetail(entry.getJson());
+        } else {
+            String json = QueryUtils.fetchBookJson(url);
+            if (!TextUtils.isEmpty(json)) {
+                cache.write(url, json, false);
+            }
+            detail = QueryUtils.extractDetail(json);
+        }
+
+        if (detail != null) {
+            details.put(id, detail);
+        }
+        return detail;
+    }
+}
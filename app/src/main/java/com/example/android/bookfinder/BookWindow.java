@@ -0,0 +1,487 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Windowed data source for the result list of a query.
+ * <p>
+ * It reports the full number of matches as its size, but only keeps the pages around
+ * the visible rows in memory. Pages that scroll out of the window are dropped, and
+ * loaded again through the {@link BookSource} when they come back into view. That way
+ * memory stays flat no matter how far the user scrolls.
+ * <p>
+ * While the list scrolls, pages are only requested once they stayed in the window for
+ * {@link #REQUEST_DELAY_MILLIS}, so a fling through thousands of rows does not start a
+ * load for every page it passes.
+ * <p>
+ * The API may return fewer books than the page size in the middle of the results. Those
+ * short pages shift the positions of all books after them.
+ * <p>
+ * Pages that fail to load are retried with an exponential backoff while they stay in
+ * the window, and their rows report {@link #isFailed(int)} in the meantime.
+ */
+public class BookWindow {
+
+    /**
+     * Number of pages kept before and after the visible ones
+     */
+    private static final int WINDOW_MARGIN = 1;
+
+    /**
+     * How long pages have to stay in the window while scrolling before they are requested
+     */
+    private static final long REQUEST_DELAY_MILLIS = 150;
+
+    /**
+     * Loads the pages of all windows. It is separate from the shared AsyncTask pool, whose
+     * bounded queue would reject tasks when too many pages were requested at once.
+     */
+    private static final Executor PAGE_EXECUTOR = Executors.newFixedThreadPool(2);
+
+    /**
+     * Delay before the first retry of a failed page, doubled with every further failure
+     */
+    private static final long RETRY_MIN_MILLIS = 1000;
+    private static final long RETRY_MAX_MILLIS = 30000;
+
+    private final Context context;
+    private final String queryUrl;
+    private final int pageSize;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Pages currently in memory, by page index
+     */
+    private final SparseArray<List<Book>> pages = new SparseArray<>();
+
+    /**
+     * Pages currently being loaded, by page index
+     */
+    private final SparseArray<PageTask> loading = new SparseArray<>();
+
+    /**
+     * Books missing from pages that came back short, by page index. Unlike the pages
+     * themselves these are kept when the pages are dropped, so positions stay stable.
+     */
+    private final SparseIntArray shortfalls = new SparseIntArray();
+
+    /**
+     * Pages whose last load failed, by page index
+     */
+    private final SparseArray<Failure> failures = new SparseArray<>();
+
+    private final Runnable requestWindowPages = new Runnable() {
+        @Override
+        public void run() {
+            requestWindowPages();
+        }
+    };
+
+    /**
+     * Separate from {@link #requestWindowPages}, so scrolling does not postpone the retries
+     */
+    private final Runnable retryFailedPages = new Runnable() {
+        @Override
+        public void run() {
+            requestWindowPages();
+        }
+    };
+
+    private int count;
+    private int totalItems;
+    private int firstPage;
+    private int lastPage;
+    private boolean idle = true;
+    private boolean released;
+
+    /**
+     * True while the first page is still arriving through {@link #append(List)}
+     */
+    private boolean streaming;
+
+    /**
+     * Constructs a new {@link BookWindow}.
+     *
+     * @param ccontext  of the app
+     * @param qqueryUrl of the first page, its {@code maxResults} is the page size
+     * @param page      is the already loaded first page
+     * @param llistener is notified whenever a page arrives
+     */
+    public BookWindow(Context ccontext, String qqueryUrl, BookPage page, Listener llistener) {
+        this(ccontext, qqueryUrl, llistener);
+        setFirstPage(page);
+    }
+
+    /**
+     * Constructs a new {@link BookWindow} whose first page is still downloading. Its books
+     * are added with {@link #append(List)} as they are parsed, and the window reports only
+     * those until {@link #complete(BookPage)} is called.
+     *
+     * @param ccontext  of the app
+     * @param qqueryUrl of the first page, its {@code maxResults} is the page size
+     * @param llistener is notified whenever books arrive
+     */
+    public BookWindow(Context ccontext, String qqueryUrl, Listener llistener) {
+        context = ccontext.getApplicationContext();
+        queryUrl = qqueryUrl;
+        pageSize = BookSource.pageSize(qqueryUrl);
+        listener = llistener;
+        lastPage = WINDOW_MARGIN;
+        streaming = true;
+        pages.put(0, new ArrayList<Book>());
+    }
+
+    public String getQueryUrl() {
+        return queryUrl;
+    }
+
+    /**
+     * Returns true while the first page is still arriving.
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Adds books that were just parsed to the end of the first page.
+     */
+    public void append(List<Book> batch) {
+        if (released || !streaming) {
+            return;
+        }
+        List<Book> books = pages.get(0);
+        if (books == null) {
+            books = new ArrayList<>();
+            pages.put(0, books);
+        }
+        books.addAll(batch);
+        count = books.size();
+        listener.onWindowChanged();
+    }
+
+    /**
+     * Replaces the streamed books with the complete first page, after which the window
+     * reports the full number of matches.
+     */
+    public void complete(BookPage page) {
+        if (released) {
+            return;
+        }
+        setFirstPage(page);
+        listener.onWindowChanged();
+    }
+
+    /**
+     * Ends the streaming of the first page when its download failed. The books that
+     * arrived so far are kept as the whole result set.
+     */
+    public void abort() {
+        if (released || !streaming) {
+            return;
+        }
+        streaming = false;
+        List<Book> books = pages.get(0);
+        count = books == null ? 0 : books.size();
+        totalItems = count;
+        listener.onWindowChanged();
+    }
+
+    private void setFirstPage(BookPage page) {
+        streaming = false;
+        List<Book> books = page.getBooks();
+        pages.put(0, books);
+        totalItems = page.getTotalItems();
+        count = Math.max(books.size(), totalItems);
+        onPageSize(0, books.size());
+    }
+
+    /**
+     * Returns the logical number of books, including the ones not in memory.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the book at the given position, or null if its page is not in memory yet.
+     * In that case the page is loaded and the {@link Listener} is notified once it is there.
+     */
+    public Book getItem(int position) {
+        int page = pageOf(position);
+        List<Book> books = pages.get(page);
+        if (books == null) {
+            scheduleRequests();
+            return null;
+        }
+        int index = position - pageStart(page);
+        return index < books.size() ? books.get(index) : null;
+    }
+
+    /**
+     * Returns true if the book at the given position is not there because its page
+     * failed to load. It is retried automatically, or right away with {@link #retry()}.
+     */
+    public boolean isFailed(int position) {
+        int page = pageOf(position);
+        return pages.get(page) == null && failures.get(page) != null;
+    }
+
+    /**
+     * Retries the failed pages in the window right away.
+     */
+    public void retry() {
+        for (int i = 0; i < failures.size(); i++) {
+            failures.valueAt(i).retryAt = 0;
+        }
+        handler.removeCallbacks(retryFailedPages);
+        requestWindowPages();
+    }
+
+    /**
+     * Tells the window whether the list is at rest. Pages are requested right away while
+     * it is, and only after {@link #REQUEST_DELAY_MILLIS} while it scrolls.
+     */
+    public void setIdle(boolean iidle) {
+        idle = iidle;
+        if (idle) {
+            scheduleRequests();
+        }
+    }
+
+    /**
+     * Moves the window to the given visible rows: pages far from them are dropped,
+     * and pages right next to them are loaded ahead of time.
+     */
+    public void onVisibleRangeChanged(int firstVisible, int visibleCount) {
+        if (visibleCount <= 0) {
+            return;
+        }
+        firstPage = Math.max(0, pageOf(firstVisible) - WINDOW_MARGIN);
+        lastPage = pageOf(firstVisible + visibleCount - 1) + WINDOW_MARGIN;
+
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            if (!inWindow(pages.keyAt(i))) {
+                pages.removeAt(i);
+            }
+        }
+        for (int i = loading.size() - 1; i >= 0; i--) {
+            if (!inWindow(loading.keyAt(i))) {
+                loading.valueAt(i).cancel(false);
+                loading.removeAt(i);
+            }
+        }
+        for (int i = failures.size() - 1; i >= 0; i--) {
+            // Coming back to them later starts over
+            if (!inWindow(failures.keyAt(i))) {
+                failures.removeAt(i);
+            }
+        }
+
+        scheduleRequests();
+    }
+
+    /**
+     * Returns the number of books currently held in memory.
+     */
+    public int residentCount() {
+        int resident = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            resident += pages.valueAt(i).size();
+        }
+        return resident;
+    }
+
+    /**
+     * Stops all loads, the window must not be used afterwards.
+     */
+    public void release() {
+        released = true;
+        handler.removeCallbacks(requestWindowPages);
+        handler.removeCallbacks(retryFailedPages);
+        for (int i = 0; i < loading.size(); i++) {
+            loading.valueAt(i).cancel(false);
+        }
+        loading.clear();
+        pages.clear();
+    }
+
+    private boolean inWindow(int page) {
+        return page >= firstPage && page <= lastPage;
+    }
+
+    /**
+     * Returns the index of the page holding the book at the given position.
+     */
+    private int pageOf(int position) {
+        int page = 0;
+        int start = 0;
+        for (int i = 0; i < shortfalls.size(); i++) {
+            int shortPage = shortfalls.keyAt(i);
+            // Full pages up to the next short one
+            int fullEnd = start + (shortPage - page) * pageSize;
+            if (position < fullEnd) {
+                break;
+            }
+            start = fullEnd + pageSize - shortfalls.valueAt(i);
+            page = shortPage + 1;
+            if (position < start) {
+                return shortPage;
+            }
+        }
+        return page + (position - start) / pageSize;
+    }
+
+    /**
+     * Returns the position of the first book of the given page.
+     */
+    private int pageStart(int page) {
+        int start = page * pageSize;
+        for (int i = 0; i < shortfalls.size() && shortfalls.keyAt(i) < page; i++) {
+            start -= shortfalls.valueAt(i);
+        }
+        return start;
+    }
+
+    /**
+     * Takes the number of books a page really has into account, which may be less than
+     * the page size anywhere in the results.
+     */
+    private void onPageSize(int page, int size) {
+        int shortfall = Math.max(0, pageSize - size);
+        int previous = shortfalls.get(page, 0);
+        if (shortfall == previous) {
+            return;
+        }
+        int end = pageStart(page) + size;
+        if (shortfall == 0) {
+            shortfalls.delete(page);
+        } else {
+            shortfalls.put(page, shortfall);
+        }
+
+        if (size == 0 || (shortfall > 0 && (page + 1) * pageSize >= totalItems)) {
+            // The total reported by the API is only an estimate, this is where the results really end
+            count = end;
+        } else {
+            count = Math.max(end, count - (shortfall - previous));
+        }
+    }
+
+    private void scheduleRequests() {
+        if (released || streaming) {
+            // Nothing beyond the first page is known yet while it streams
+            return;
+        }
+        handler.removeCallbacks(requestWindowPages);
+        if (idle) {
+            requestWindowPages();
+        } else {
+            handler.postDelayed(requestWindowPages, REQUEST_DELAY_MILLIS);
+        }
+    }
+
+    private void requestWindowPages() {
+        long now = SystemClock.uptimeMillis();
+        int lastPageOfResults = count == 0 ? 0 : pageOf(count - 1);
+        for (int page = firstPage; page <= Math.min(lastPage, lastPageOfResults); page++) {
+            Failure failure = failures.get(page);
+            if (pages.get(page) == null && (failure == null || failure.retryAt <= now)) {
+                requestPage(page);
+            }
+        }
+    }
+
+    private void requestPage(int page) {
+        if (released || loading.get(page) != null) {
+            return;
+        }
+        PageTask task = new PageTask(page);
+        loading.put(page, task);
+        task.executeOnExecutor(PAGE_EXECUTOR, BookSource.pageUrl(queryUrl, page));
+    }
+
+    private void onPageLoaded(int page, BookPage result) {
+        loading.remove(page);
+        if (released || !inWindow(page)) {
+            return;
+        }
+        if (result == null) {
+            onPageFailed(page);
+            return;
+        }
+
+        failures.remove(page);
+        List<Book> books = result.getBooks();
+        onPageSize(page, books.size());
+        pages.put(page, books);
+        listener.onWindowChanged();
+    }
+
+    private void onPageFailed(int page) {
+        Failure failure = failures.get(page);
+        if (failure == null) {
+            failure = new Failure();
+            failures.put(page, failure);
+        }
+        long delay = Math.min(RETRY_MAX_MILLIS, RETRY_MIN_MILLIS << Math.min(failure.attempts, 5));
+        failure.attempts++;
+        failure.retryAt = SystemClock.uptimeMillis() + delay;
+
+        handler.removeCallbacks(retryFailedPages);
+        handler.postDelayed(retryFailedPages, delay);
+
+        // Let the rows show that they failed instead of loading forever
+        listener.onWindowChanged();
+    }
+
+    /**
+     * Failed loads of a page so far, and when it may be loaded again
+     */
+    private static class Failure {
+        int attempts;
+        long retryAt;
+    }
+
+    private class PageTask extends AsyncTask<String, Void, BookPage> {
+        private final int page;
+
+        PageTask(int ppage) {
+            page = ppage;
+        }
+
+        @Override
+        protected BookPage doInBackground(String... urls) {
+            BookPage result = BookSource.load(context, urls[0]);
+
+            // Lay out the texts of the rows before they are bound
+            if (result != null && !isCancelled()) {
+                TextLayouts.get(context).precompute(result.getBooks());
+            }
+            return result;
+        }
+
+        @Override
+        protected void onPostExecute(BookPage result) {
+            onPageLoaded(page, result);
+        }
+    }
+
+    /**
+     * Notified on the UI thread whenever the content of the window changed.
+     */
+    public interface Listener {
+        void onWindowChanged();
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.bookfinder;
+
+import android.support.annotation.StringRes;
+import android.support.v4.util.LruCache;
+
+import java.util.Map;
+
+/**
+ * An in-memory LRU cache whose entries are measured in bytes and which is part of the
+ * {@link MemoryBudget} of the app.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the cached values
+ */
+public abstract class BudgetedLruCache<K, V> implements MemoryBudget.Trimmable {
+
+    private final int nameRes;
+    private final int priority;
+    private final MemoryBudget budget;
+    private final LruCache<K, V> cache;
+
+    /**
+     * Constructs a new {@link BudgetedLruCache} and registers it with the budget.
+     *
+     * @param nnameRes  string resource of the name shown in the usage summary of the budget
+     * @param ppriority one of the {@code PRIORITY_} constants of {@link MemoryBudget}
+     * @param mmaxBytes upper bound of this cache alone, the budget may trim it further
+     * @param bbudget   the cache is registered with
+     */
+    protected BudgetedLruCache(@StringRes int nnameRes, int ppriority, int mmaxBytes, MemoryBudget bbudget) {
+        nameRes = nnameRes;
+        priority = ppriority;
+        budget = bbudget;
+        cache = new LruCache<K, V>(mmaxBytes) {
+            @Override
+            protected int sizeOf(K key, V value) {
+                return BudgetedLruCache.this.sizeOf(key, value);
+            }
+        };
+        budget.register(this);
+    }
+
+    /**
+     * Returns the approximate number of bytes the given entry occupies.
+     */
+    protected abstract int sizeOf(K key, V value);
+
+    public V get(K key) {
+        return cache.get(key);
+    }
+
+    public void put(K key, V value) {
+        cache.put(key, value);
+        budget.enforce();
+    }
+
+    public V remove(K key) {
+        return cache.remove(key);
+    }
+
+    public void evictAll() {
+        cache.evictAll();
+    }
+
+    /**
+     * Returns a copy of the current entries, least recently used first.
+     */
+    public Map<K, V> snapshot() {
+        return cache.snapshot();
+    }
+
+    public int maxSizeBytes() {
+        return cache.maxSize();
+    }
+
+    @Override
+    public int getNameRes() {
+        return nameRes;
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public long sizeBytes() {
+        return cache.size();
+    }
+
+    @Override
+    public void trimToSize(long bytes) {
+        cache.trimToSize((int) Math.min(bytes, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.squareup.picasso.MemoryPolicy;
+import com.squareup.picasso.Picasso;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Refreshes the results and thumbnails of the most frequent and recent queries into
+ * the local caches, so the next time the user runs them they do not start cold.
+ * <p>
+ * This does blocking network requests, so it must be run on a background thread.
+ */
+public class CacheWarmer {
+    private static final String TAG = CacheWarmer.class.getSimpleName();
+
+    /**
+     * How many of the top queries are refreshed per run
+     */
+    private static final int MAX_QUERIES = 10;
+
+    /**
+     * Entries younger than this are considered fresh enough and are left alone
+     */
+    private static final long REFRESH_AGE_MILLIS = BookCache.MAX_AGE_MILLIS / 2;
+
+    /**
+     * How many bytes of responses a single run is allowed to download
+     */
+    private static final long BYTE_BUDGET = 2 * 1024 * 1024;
+
+    /**
+     * How many thumbnails a single run is allowed to download. Picasso only hands out the
+     * decoded bitmaps, not the downloaded bytes, so they are counted instead. A thumbnail
+     * of the Books API is around 10 KB.
+     */
+    private static final int THUMBNAIL_BUDGET = 100;
+
+    private final Context context;
+    private volatile boolean cancelled;
+
+    /**
+     * Constructs a new {@link CacheWarmer}.
+     *
+     * @param ccontext of the app
+     */
+    public CacheWarmer(Context ccontext) {
+        context = ccontext.getApplicationContext();
+    }
+
+    /**
+     * Stops the run as soon as the current request is done.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Refreshes the caches, returns the number of response bytes that were spent.
+     */
+    public long run() {
+        BookCache cache = BookCache.get(context);
+        long spent = 0;
+        int thumbnails = 0;
+
+        for (String url : QueryStats.get(context).topQueries(MAX_QUERIES)) {
+            if (cancelled || spent >= BYTE_BUDGET) {
+                break;
+            }
+
+            BookCache.Entry entry = cache.read(url);
+            if (entry != null && entry.getAgeMillis() < REFRESH_AGE_MILLIS) {
+                continue;
+            }
+
+            String json = QueryUtils.fetchBookJson(url);
+            if (TextUtils.isEmpty(json)) {
+                continue;
+            }
+            cache.write(url, json, true);
+            spent += json.getBytes(Charset.forName("UTF-8")).length;
+
+            thumbnails += warmThumbnails(QueryUtils.extractFromJson(json), THUMBNAIL_BUDGET - thumbnails);
+        }
+
+        cache.trim();
+        Log.d(TAG, "Cache warming spent " + spent + " of " + BYTE_BUDGET + " bytes and "
+                + thumbnails + " of " + THUMBNAIL_BUDGET + " thumbnails");
+        return spent;
+    }
+
+    /**
+     * Loads the thumbnails of the given books through Picasso, which keeps them in its
+     * disk cache, without filling up the memory cache of the UI. Returns the number of
+     * thumbnails that were loaded.
+     */
+    private int warmThumbnails(List<Book> books, int budget) {
+        int loaded = 0;
+        if (books == null) {
+            return loaded;
+        }
+
+        Picasso picasso = Picasso.with(context);
+        for (Book book : books) {
+            if (cancelled || loaded >= budget) {
+                break;
+            }
+            if (book.getImageUrl() == null) {
+                continue;
+            }
+            try {
+                Bitmap bitmap = picasso.load(book.getImageUrl())
+                        .memoryPolicy(MemoryPolicy.NO_CACHE, MemoryPolicy.NO_STORE)
+                        .get();
+                if (bitmap != null) {
+                    loaded++;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Problem warming thumbnail " + book.getImageUrl(), e);
+            }
+        }
+        return loaded;
+    }
+}
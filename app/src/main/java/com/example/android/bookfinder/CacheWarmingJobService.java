@@ -0,0 +1,110 @@
+package com.example.android.bookfinder;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link CacheWarmer} in the background, but only while the device is on an
+ * unmetered network and either charging or idle.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class CacheWarmingJobService extends JobService {
+
+    private static final int JOB_ID_CHARGING = 1;
+    private static final int JOB_ID_IDLE = 2;
+
+    private static final long PERIOD_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    private WarmTask task;
+
+    /**
+     * Schedules the periodic cache warming, unless it is scheduled already. JobScheduler
+     * only exists on Lollipop and up, on older devices the caches are only filled by the
+     * foreground loads.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        ComponentName service = new ComponentName(context, CacheWarmingJobService.class);
+
+        // Scheduling a job again replaces it and restarts its period, so a user opening
+        // the app more often than every period would never get a run
+        boolean chargingPending = false;
+        boolean idlePending = false;
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            chargingPending |= job.getId() == JOB_ID_CHARGING;
+            idlePending |= job.getId() == JOB_ID_IDLE;
+        }
+
+        // Constraints of a single job are all required, so "charging or idle" needs two jobs
+        if (!chargingPending) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_CHARGING, service)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setRequiresCharging(true)
+                    .setPeriodic(PERIOD_MILLIS)
+                    .build());
+        }
+        if (!idlePending) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_IDLE, service)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setRequiresDeviceIdle(true)
+                    .setPeriodic(PERIOD_MILLIS)
+                    .build());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        // Both jobs may fire at the same time, one run is enough
+        if (task != null) {
+            return false;
+        }
+        task = new WarmTask(params);
+        task.execute();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (task != null) {
+            task.warmer.cancel();
+            task = null;
+        }
+        // The constraints are no longer met, try again next time they are
+        return true;
+    }
+
+    private class WarmTask extends AsyncTask<Void, Void, Long> {
+        private final JobParameters params;
+        private final CacheWarmer warmer = new CacheWarmer(CacheWarmingJobService.this);
+
+        WarmTask(JobParameters pparams) {
+            params = pparams;
+        }
+
+        @Override
+        protected Long doInBackground(Void... voids) {
+            return warmer.run();
+        }
+
+        @Override
+        protected void onPostExecute(Long spent) {
+            if (task == this) {
+                task = null;
+                jobFinished(params, false);
+            }
+        }
+    }
+}
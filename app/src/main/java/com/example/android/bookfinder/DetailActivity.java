@@ -0,0 +1,195 @@
+package com.example.android.bookfinder;
+
+import android.app.LoaderManager.LoaderCallbacks;
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.content.Intent;
+import android.content.Loader;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.Html;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.squareup.picasso.Picasso;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+/**
+ * Shows the details of a single book from the volumes/{id} endpoint. When the
+ * {@link DetailPrefetcher} already loaded them, they are shown right away.
+ */
+public class DetailActivity extends AppCompatActivity implements LoaderCallbacks<BookDetail> {
+
+    /**
+     * Volume id of the book to show
+     */
+    public static final String EXTRA_BOOK_ID = "bookId";
+
+    private static final int DETAIL_LOADER_ID = 1;
+
+    @BindView(R.id.detail_content) View contentView;
+    @BindView(R.id.empty_view) TextView emptyStateTextView;
+    @BindView(R.id.loading_indicator) View loadingIndicator;
+    @BindView(R.id.detail_thumbnail) ImageView thumbnailView;
+    @BindView(R.id.detail_title) TextView titleView;
+    @BindView(R.id.detail_subtitle) TextView subtitleView;
+    @BindView(R.id.detail_authors) TextView authorsView;
+    @BindView(R.id.detail_publisher) TextView publisherView;
+    @BindView(R.id.detail_price) TextView priceView;
+    @BindView(R.id.detail_description) TextView descriptionView;
+    @BindView(R.id.detail_open_website) Button openWebsiteButton;
+
+    private String bookId;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_detail);
+
+        ButterKnife.bind(this);
+
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+
+        bookId = getIntent().getStringExtra(EXTRA_BOOK_ID);
+
+        // Record whether the details were prefetched, before loading them fills the cache
+        if (savedInstanceState == null && DetailPrefetcher.get(this).onDetailOpened(bookId, new Runnable() {
+            @Override
+            public void run() {
+                showCachedOrLoad();
+            }
+        })) {
+            // They are on their way, don't request them a second time
+            return;
+        }
+        showCachedOrLoad();
+    }
+
+    @Override
+    protected void onDestroy() {
+        DetailPrefetcher.get(this).stopWaiting(bookId);
+        super.onDestroy();
+    }
+
+    private void showCachedOrLoad() {
+        // Prefetched details are in memory already, show them without a round trip
+        BookDetail detail = DetailCache.get(this).get(bookId);
+        if (detail != null) {
+            showDetail(detail);
+        } else {
+            getLoaderManager().initLoader(DETAIL_LOADER_ID, null, this);
+        }
+    }
+
+    @Override
+    public Loader<BookDetail> onCreateLoader(int i, Bundle bundle) {
+        return new DetailLoader(this, bookId);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<BookDetail> loader, BookDetail detail) {
+        if (detail != null) {
+            showDetail(detail);
+        } else {
+            // Hide loading indicator so error message will be visible
+            loadingIndicator.setVisibility(View.GONE);
+            emptyStateTextView.setVisibility(View.VISIBLE);
+            emptyStateTextView.setText(R.string.detail_load_failed);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<BookDetail> loader) {
+    }
+
+    private void showDetail(final BookDetail detail) {
+        loadingIndicator.setVisibility(View.GONE);
+        contentView.setVisibility(View.VISIBLE);
+        setTitle(detail.getTitle());
+
+        Picasso.with(this).load(detail.getImageUrl()).placeholder(R.drawable.placeholder_book).into(thumbnailView);
+
+        titleView.setText(detail.getTitle());
+        setOptionalText(subtitleView, detail.getSubtitle());
+        authorsView.setText(detail.getAuthors());
+
+        // Publisher, date and number of pages share one line, leaving out what is unknown
+        StringBuilder published = new StringBuilder();
+        appendPart(published, detail.getPublisher());
+        appendPart(published, detail.getPublishedDate());
+        if (detail.getPageCount() > 0) {
+            appendPart(published, getString(R.string.detail_page_count, detail.getPageCount()));
+        }
+        setOptionalText(publisherView, published.toString());
+
+        setOptionalText(priceView, detail.getBookPrice());
+        setOptionalText(descriptionView, detail.getDescription() == null
+                ? null : fromHtml(detail.getDescription()));
+
+        if (detail.getBookUrl() == null) {
+            openWebsiteButton.setVisibility(View.GONE);
+        } else {
+            // Send an intent to a web browser to open the website with more information
+            openWebsiteButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(detail.getBookUrl())));
+                }
+            });
+        }
+    }
+
+    private static void setOptionalText(TextView view, CharSequence text) {
+        view.setVisibility(TextUtils.isEmpty(text) ? View.GONE : View.VISIBLE);
+        view.setText(text);
+    }
+
+    private static void appendPart(StringBuilder builder, String part) {
+        if (TextUtils.isEmpty(part)) {
+            return;
+        }
+        if (builder.length() > 0) {
+            builder.append(" · ");
+        }
+        builder.append(part);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static CharSequence fromHtml(String html) {
+        // The descriptions contain simple markup like <b> and <br>
+        return Html.fromHtml(html);
+    }
+
+    /**
+     * Loads the details of a book on a background thread.
+     */
+    private static class DetailLoader extends AsyncTaskLoader<BookDetail> {
+        private final String id;
+
+        DetailLoader(Context context, String iid) {
+            super(context);
+            id = iid;
+        }
+
+        @Override
+        protected void onStartLoading() {
+            forceLoad();
+        }
+
+        @Override
+        public BookDetail loadInBackground() {
+            if (id == null) {
+                return null;
+            }
+            return BookSource.loadDetail(getContext(), id);
+        }
+    }
+}
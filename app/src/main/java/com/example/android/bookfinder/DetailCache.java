@@ -0,0 +1,41 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+
+/**
+ * In-memory cache of parsed {@link BookDetail}s, keyed by volume id. It is filled by the
+ * {@link DetailPrefetcher} so opening a book does not have to wait for the network.
+ */
+public class DetailCache extends BudgetedLruCache<String, BookDetail> {
+
+    private static DetailCache instance;
+
+    private DetailCache(MemoryBudget budget) {
+        super(R.string.memory_cache_details, MemoryBudget.PRIORITY_MODELS, (int) (budget.getCapBytes() / 8), budget);
+    }
+
+    /**
+     * Returns the shared {@link DetailCache} of the app.
+     */
+    public static synchronized DetailCache get(Context context) {
+        if (instance == null) {
+            instance = new DetailCache(MemoryBudget.get(context));
+        }
+        return instance;
+    }
+
+    @Override
+    protected int sizeOf(String key, BookDetail detail) {
+        return ResultCache.sizeOf(key)
+                + ResultCache.sizeOf(detail.getId())
+                + ResultCache.sizeOf(detail.getTitle())
+                + ResultCache.sizeOf(detail.getSubtitle())
+                + ResultCache.sizeOf(detail.getAuthors())
+                + ResultCache.sizeOf(detail.getPublisher())
+                + ResultCache.sizeOf(detail.getPublishedDate())
+                + ResultCache.sizeOf(detail.getDescription())
+                + ResultCache.sizeOf(detail.getImageUrl())
+                + ResultCache.sizeOf(detail.getBookUrl())
+                + ResultCache.sizeOf(detail.getBookPrice());
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Speculatively loads the details of the books whose rows stay on screen, so opening
+ * one of them in the {@link DetailActivity} is instant.
+ * <p>
+ * Prefetching is limited in how many requests run at the same time and in how many bytes
+ * are spent per result set. Requests in flight count against the byte budget with the
+ * average size of the details fetched so far, so it is only overshot by how much they
+ * turn out bigger. How many of the prefetched details are really opened is recorded in
+ * {@link QueryStats}, so those limits can be tuned.
+ * <p>
+ * All methods must be called on the UI thread.
+ */
+public final class DetailPrefetcher {
+    private static final String TAG = DetailPrefetcher.class.getSimpleName();
+
+    /**
+     * How long rows have to stay on screen before their details are prefetched
+     */
+    private static final long DWELL_MILLIS = 500;
+
+    /**
+     * Number of prefetch requests running at the same time
+     */
+    private static final int MAX_IN_FLIGHT = 2;
+
+    /**
+     * How many bytes may be prefetched per result set
+     */
+    private static final long BYTE_BUDGET = 256 * 1024;
+
+    /**
+     * Expected size of the details of a book until some have been fetched
+     */
+    private static final long DEFAULT_DETAIL_BYTES = 16 * 1024;
+
+    private static DetailPrefetcher instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Volume ids waiting for a free request slot
+     */
+    private final Deque<String> pending = new ArrayDeque<>();
+
+    /**
+     * Prefetched volume ids that have not been opened yet, with their size in bytes
+     */
+    private final Map<String, Integer> prefetched = new HashMap<>();
+
+    /**
+     * Volume ids being prefetched right now
+     */
+    private final Set<String> inFlight = new HashSet<>();
+
+    /**
+     * Volume ids the user opened while they were still being prefetched
+     */
+    private final Set<String> openedInFlight = new HashSet<>();
+
+    /**
+     * What to run once the prefetch of an opened book is done, by volume id
+     */
+    private final Map<String, Runnable> waiting = new HashMap<>();
+
+    private Runnable dwell;
+
+    /**
+     * Query URL of the result set the byte budget is spent on
+     */
+    private String resultsUrl;
+    private long spentBytes;
+
+    /**
+     * Bytes and number of all details prefetched so far, for their average size
+     */
+    private long fetchedBytes;
+    private int fetchedCount;
+
+    private DetailPrefetcher(Context ccontext) {
+        context = ccontext;
+    }
+
+    /**
+     * Returns the shared {@link DetailPrefetcher} of the app.
+     */
+    public static DetailPrefetcher get(Context context) {
+        if (instance == null) {
+            instance = new DetailPrefetcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Called when the list came to rest showing the given books. If they are still on
+     * screen after {@link #DWELL_MILLIS}, their details are prefetched.
+     */
+    public void onRowsSettled(final List<Book> visible) {
+        cancelDwell();
+        dwell = new Runnable() {
+            @Override
+            public void run() {
+                dwell = null;
+                for (Book book : visible) {
+                    String id = book.getId();
+                    if (id != null && !pending.contains(id) && !prefetched.containsKey(id)
+                            && !inFlight.contains(id)) {
+                        pending.add(id);
+                    }
+                }
+                startPending();
+            }
+        };
+        handler.postDelayed(dwell, DWELL_MILLIS);
+    }
+
+    /**
+     * Called when the list starts moving, the rows on screen are about to change.
+     */
+    public void onScrolling() {
+        cancelDwell();
+        pending.clear();
+    }
+
+    /**
+     * Called when a result set is shown. A new one gets a fresh byte budget, the books
+     * prefetched for the previous one can't be opened anymore. The same one shown again,
+     * like when coming back from the details, keeps both.
+     */
+    public void reset(String url) {
+        if (url.equals(resultsUrl)) {
+            return;
+        }
+        resultsUrl = url;
+        onScrolling();
+        spentBytes = 0;
+        prefetched.clear();
+    }
+
+    /**
+     * Called when the user opens the details of a book, to record whether prefetching
+     * it paid off.
+     *
+     * @param whenPrefetched run once the details arrived or failed, if they are being
+     *                       prefetched right now
+     * @return true if they are being prefetched, so the caller should wait for them
+     * instead of requesting them a second time
+     */
+    public boolean onDetailOpened(String id, Runnable whenPrefetched) {
+        if (inFlight.contains(id)) {
+            // Counted as a hit once the prefetch arrives, it is about to be used
+            openedInFlight.add(id);
+            waiting.put(id, whenPrefetched);
+            return true;
+        }
+
+        Integer bytes = prefetched.remove(id);
+        if (bytes != null && DetailCache.get(context).get(id) == null) {
+            // Evicted under memory pressure before it was used, so it was wasted after all
+            bytes = null;
+        }
+        recordDetailOpen(bytes == null ? 0 : bytes);
+        return false;
+    }
+
+    /**
+     * Stops waiting for the prefetch of the given book, its details are not shown anymore.
+     * Whether the prefetch paid off is still recorded when it arrives.
+     */
+    public void stopWaiting(String id) {
+        waiting.remove(id);
+    }
+
+    private void recordDetailOpen(int prefetchedBytes) {
+        QueryStats stats = QueryStats.get(context);
+        stats.recordDetailOpen(prefetchedBytes);
+        Log.d(TAG, String.format(Locale.US, "Prefetch %s: hit ratio %.2f, waste ratio %.2f, coverage %.2f",
+                prefetchedBytes == 0 ? "miss" : "hit", stats.getPrefetchHitRatio(),
+                stats.getPrefetchWasteRatio(), stats.getPrefetchCoverage()));
+    }
+
+    private void cancelDwell() {
+        if (dwell != null) {
+            handler.removeCallbacks(dwell);
+            dwell = null;
+        }
+    }
+
+    private void startPending() {
+        while (inFlight.size() < MAX_IN_FLIGHT && !pending.isEmpty()
+                && spentBytes + (inFlight.size() + 1) * expectedDetailBytes() <= BYTE_BUDGET) {
+            String id = pending.poll();
+            inFlight.add(id);
+            new PrefetchTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, id);
+        }
+    }
+
+    private long expectedDetailBytes() {
+        return fetchedCount == 0 ? DEFAULT_DETAIL_BYTES : fetchedBytes / fetchedCount;
+    }
+
+    private void onPrefetched(String id, int bytes) {
+        inFlight.remove(id);
+        boolean opened = openedInFlight.remove(id);
+        if (bytes > 0) {
+            spentBytes += bytes;
+            fetchedBytes += bytes;
+            fetchedCount++;
+            QueryStats.get(context).recordPrefetch(bytes);
+            if (!opened) {
+                prefetched.put(id, bytes);
+            }
+        }
+        if (opened) {
+            recordDetailOpen(bytes);
+        }
+        startPending();
+
+        Runnable whenPrefetched = waiting.remove(id);
+        if (whenPrefetched != null) {
+            whenPrefetched.run();
+        }
+    }
+
+    private class PrefetchTask extends AsyncTask<String, Void, Integer> {
+        private String id;
+
+        /**
+         * Returns the number of bytes fetched, 0 if nothing had to be or could be fetched.
+         */
+        @Override
+        protected Integer doInBackground(String... ids) {
+            id = ids[0];
+            DetailCache details = DetailCache.get(context);
+            if (details.get(id) != null) {
+                return 0;
+            }
+
+            String url = BookSource.detailUrl(id);
+            String json = QueryUtils.fetchBookJson(url);
+            BookDetail detail = QueryUtils.extractDetail(json);
+            if (detail == null || TextUtils.isEmpty(json)) {
+                return 0;
+            }
+            BookCache.get(context).write(url, json, false);
+            details.put(id, detail);
+            return json.getBytes(Charset.forName("UTF-8")).length;
+        }
+
+        @Override
+        protected void onPostExecute(Integer bytes) {
+            onPrefetched(id, bytes);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * A view that draws a text {@link Layout} which was built ahead of time, so binding it
+ * does not have to measure and lay out the text on the UI thread like a TextView would.
+ * <p>
+ * The text is also its content description, so accessibility services read it like
+ * the text of a TextView, unless a description of its own is given with it.
+ */
+public class LayoutView extends View {
+
+    private Layout layout;
+
+    public LayoutView(Context context) {
+        super(context);
+    }
+
+    public LayoutView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Shows the given layout, or nothing if it is null.
+     */
+    public void setTextLayout(Layout llayout) {
+        setTextLayout(llayout, llayout == null ? null : llayout.getText());
+    }
+
+    /**
+     * Shows the given layout, or nothing if it is null, and has accessibility services read
+     * the given description instead of the drawn text, like the title before it was
+     * upper-cased or ellipsized.
+     */
+    public void setTextLayout(Layout llayout, CharSequence contentDescription) {
+        setContentDescription(contentDescription);
+        if (layout == llayout) {
+            return;
+        }
+        boolean sizeChanged = layout == null || llayout == null
+                || layout.getWidth() != llayout.getWidth()
+                || layout.getHeight() != llayout.getHeight();
+        layout = llayout;
+        if (sizeChanged) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    public Layout getTextLayout() {
+        return layout;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getPaddingLeft() + getPaddingRight();
+        int height = getPaddingTop() + getPaddingBottom();
+        if (layout != null) {
+            width += layout.getWidth();
+            height += layout.getHeight();
+        }
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (layout == null) {
+            return;
+        }
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        layout.draw(canvas);
+        canvas.restore();
+    }
+}
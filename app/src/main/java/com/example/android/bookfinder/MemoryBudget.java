@@ -0,0 +1,201 @@
+package com.example.android.bookfinder;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.support.annotation.StringRes;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Global memory limit shared by every in-process cache of the app.
+ * <p>
+ * Caches register themselves with a priority. When the caches together grow beyond the
+ * limit, or when the system reports memory pressure, the caches with the lowest priority
+ * are trimmed first.
+ */
+public final class MemoryBudget {
+    private static final String TAG = MemoryBudget.class.getSimpleName();
+
+    /**
+     * Cheapest to rebuild, they only need the book and the list width
+     */
+    public static final int PRIORITY_TEXT_LAYOUTS = 0;
+    /**
+     * Picasso reloads them from its disk cache
+     */
+    public static final int PRIORITY_THUMBNAILS = 1;
+    public static final int PRIORITY_MODELS = 2;
+    /**
+     * Most expensive to rebuild, kept as long as possible
+     */
+    public static final int PRIORITY_RESULTS = 3;
+
+    /**
+     * Part of the per-app heap limit the caches may use together
+     */
+    private static final int HEAP_FRACTION = 6;
+
+    private static MemoryBudget instance;
+
+    private final Context context;
+    private final long capBytes;
+    private final List<Trimmable> caches = new ArrayList<>();
+
+    private MemoryBudget(Context ccontext, long ccapBytes) {
+        context = ccontext;
+        capBytes = ccapBytes;
+    }
+
+    /**
+     * Returns the shared {@link MemoryBudget} of the app.
+     */
+    public static synchronized MemoryBudget get(Context context) {
+        if (instance == null) {
+            ActivityManager am = (ActivityManager) context.getApplicationContext()
+                    .getSystemService(Context.ACTIVITY_SERVICE);
+            long heapBytes = (long) am.getMemoryClass() * 1024 * 1024;
+            instance = new MemoryBudget(context.getApplicationContext(), heapBytes / HEAP_FRACTION);
+        }
+        return instance;
+    }
+
+    public long getCapBytes() {
+        return capBytes;
+    }
+
+    /**
+     * Adds a cache to the budget.
+     */
+    public synchronized void register(Trimmable cache) {
+        caches.add(cache);
+        // Lowest priority first, that is the order in which they are trimmed
+        Collections.sort(caches, new Comparator<Trimmable>() {
+            @Override
+            public int compare(Trimmable a, Trimmable b) {
+                return a.getPriority() - b.getPriority();
+            }
+        });
+    }
+
+    /**
+     * Returns the number of bytes all registered caches use together.
+     */
+    public synchronized long usedBytes() {
+        long total = 0;
+        for (Trimmable cache : caches) {
+            total += cache.sizeBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Trims the caches if they grew beyond the overall limit. Called by the caches
+     * after they stored something.
+     */
+    public void enforce() {
+        trimTo(capBytes);
+    }
+
+    /**
+     * Reacts to {@link ComponentCallbacks2#onTrimMemory(int)} by trimming the caches to
+     * a part of the limit that gets smaller the more pressure the system is under.
+     */
+    public void onTrimMemory(int level) {
+        long target;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            // Next in line to be killed, release everything
+            target = 0;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            target = capBytes / 4;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            target = capBytes / 2;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            target = capBytes * 3 / 4;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            target = capBytes / 4;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            target = capBytes / 2;
+        } else {
+            target = capBytes * 3 / 4;
+        }
+        trimTo(target);
+        Log.d(TAG, "onTrimMemory(" + level + "): " + describeUsage());
+    }
+
+    /**
+     * Reacts to {@link android.content.ComponentCallbacks#onLowMemory()} by clearing every cache.
+     */
+    public void onLowMemory() {
+        trimTo(0);
+        Log.d(TAG, "onLowMemory: " + describeUsage());
+    }
+
+    /**
+     * Returns a human readable summary of how much memory every cache uses. The total
+     * comes first and the caches share the second line, so it fits the few lines of a
+     * preference summary however many caches there are.
+     */
+    public synchronized String describeUsage() {
+        StringBuilder usage = new StringBuilder(context.getString(R.string.memory_usage_total,
+                toKilobytes(usedBytes()), toKilobytes(capBytes)));
+        usage.append('\n');
+        for (int i = caches.size() - 1; i >= 0; i--) {
+            Trimmable cache = caches.get(i);
+            if (i < caches.size() - 1) {
+                usage.append(context.getString(R.string.memory_usage_separator));
+            }
+            usage.append(context.getString(R.string.memory_usage_cache,
+                    context.getString(cache.getNameRes()), toKilobytes(cache.sizeBytes())));
+        }
+        return usage.toString();
+    }
+
+    private synchronized void trimTo(long targetBytes) {
+        long total = usedBytes();
+        for (Trimmable cache : caches) {
+            long excess = total - targetBytes;
+            if (excess <= 0) {
+                break;
+            }
+            long size = cache.sizeBytes();
+            cache.trimToSize(Math.max(0, size - excess));
+            total -= size - cache.sizeBytes();
+        }
+    }
+
+    private static long toKilobytes(long bytes) {
+        return bytes / 1024;
+    }
+
+    /**
+     * A cache that can be part of the {@link MemoryBudget}.
+     */
+    public interface Trimmable {
+
+        /**
+         * String resource of the name of the cache as shown in the usage summary
+         */
+        @StringRes
+        int getNameRes();
+
+        /**
+         * One of the {@code PRIORITY_} constants, lower priorities are trimmed first
+         */
+        int getPriority();
+
+        /**
+         * Current size of the cache in bytes
+         */
+        long sizeBytes();
+
+        /**
+         * Evicts entries until the cache is at most the given number of bytes
+         */
+        void trimToSize(long bytes);
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of how often and how recently each request URL was loaded, of how
+ * much foreground latency the background cache warming saved, of how well detail
+ * prefetching pays off, and of how fast results show up.
+ */
+public final class QueryStats {
+    private static final String TAG = QueryStats.class.getSimpleName();
+
+    private static final String PREFS_NAME = "query_stats";
+    private static final String COUNT_PREFIX = "count:";
+    private static final String LAST_USED_PREFIX = "last:";
+    private static final String KEY_NETWORK_AVERAGE = "network_average_ms";
+    private static final String KEY_WARM_HITS = "warm_hits";
+    private static final String KEY_SAVED_LATENCY = "saved_latency_ms";
+    private static final String KEY_PREFETCHES = "prefetches";
+    private static final String KEY_PREFETCH_BYTES = "prefetch_bytes";
+    private static final String KEY_PREFETCH_HITS = "prefetch_hits";
+    private static final String KEY_PREFETCH_HIT_BYTES = "prefetch_hit_bytes";
+    private static final String KEY_DETAIL_OPENS = "detail_opens";
+    private static final String KEY_FIRST_ROW_AVERAGE = "first_row_average_ms";
+    private static final String KEY_COMPLETE_AVERAGE = "complete_average_ms";
+
+    /**
+     * Number of distinct request URLs that are remembered
+     */
+    private static final int MAX_TRACKED_QUERIES = 50;
+
+    private static QueryStats instance;
+
+    private final SharedPreferences prefs;
+
+    private QueryStats(SharedPreferences pprefs) {
+        prefs = pprefs;
+    }
+
+    /**
+     * Returns the shared {@link QueryStats} of the app.
+     */
+    public static synchronized QueryStats get(Context context) {
+        if (instance == null) {
+            instance = new QueryStats(context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        }
+        return instance;
+    }
+
+    /**
+     * Records that the user loaded the given request URL.
+     */
+    public synchronized void recordQuery(String url) {
+        int count = prefs.getInt(COUNT_PREFIX + url, 0);
+        SharedPreferences.Editor editor = prefs.edit()
+                .putInt(COUNT_PREFIX + url, count + 1)
+                .putLong(LAST_USED_PREFIX + url, System.currentTimeMillis());
+
+        // Forget the least interesting queries so the preferences file stays small
+        List<String> urls = rankedQueries();
+        if (count == 0) {
+            urls.remove(url);
+            urls.add(0, url);
+        }
+        for (int i = MAX_TRACKED_QUERIES; i < urls.size(); i++) {
+            editor.remove(COUNT_PREFIX + urls.get(i));
+            editor.remove(LAST_USED_PREFIX + urls.get(i));
+        }
+        editor.apply();
+    }
+
+    /**
+     * Returns up to {@code limit} request URLs, the most frequent and recent ones first.
+     */
+    public synchronized List<String> topQueries(int limit) {
+        List<String> urls = rankedQueries();
+        return new ArrayList<>(urls.subList(0, Math.min(limit, urls.size())));
+    }
+
+    /**
+     * Records how long a request took when it had to go to the network.
+     */
+    public synchronized void recordNetworkFetch(long millis) {
+        prefs.edit().putLong(KEY_NETWORK_AVERAGE, average(KEY_NETWORK_AVERAGE, millis)).apply();
+    }
+
+    /**
+     * Records a foreground load that was served from an entry the cache warming prepared.
+     *
+     * @param millis how long serving it from the cache took
+     */
+    public synchronized void recordWarmHit(long millis) {
+        long saved = Math.max(0, getNetworkAverageMillis() - millis);
+        long hits = prefs.getLong(KEY_WARM_HITS, 0) + 1;
+        long totalSaved = prefs.getLong(KEY_SAVED_LATENCY, 0) + saved;
+        prefs.edit()
+                .putLong(KEY_WARM_HITS, hits)
+                .putLong(KEY_SAVED_LATENCY, totalSaved)
+                .apply();
+        Log.d(TAG, "Warm cache hit saved " + saved + "ms (" + hits + " hits, " + totalSaved + "ms total)");
+    }
+
+    public synchronized long getNetworkAverageMillis() {
+        return prefs.getLong(KEY_NETWORK_AVERAGE, 0);
+    }
+
+    /**
+     * Records how long a search took until its first row was shown, and until all the
+     * books of its first page were there.
+     */
+    public synchronized void recordLoadTiming(long firstRowMillis, long completeMillis) {
+        long firstRow = average(KEY_FIRST_ROW_AVERAGE, firstRowMillis);
+        long complete = average(KEY_COMPLETE_AVERAGE, completeMillis);
+        prefs.edit()
+                .putLong(KEY_FIRST_ROW_AVERAGE, firstRow)
+                .putLong(KEY_COMPLETE_AVERAGE, complete)
+                .apply();
+        Log.d(TAG, "Time to first row " + firstRowMillis + "ms (average " + firstRow
+                + "ms), time to complete " + completeMillis + "ms (average " + complete + "ms)");
+    }
+
+    /**
+     * Records that the details of a book were prefetched speculatively.
+     */
+    public synchronized void recordPrefetch(long bytes) {
+        prefs.edit()
+                .putLong(KEY_PREFETCHES, prefs.getLong(KEY_PREFETCHES, 0) + 1)
+                .putLong(KEY_PREFETCH_BYTES, prefs.getLong(KEY_PREFETCH_BYTES, 0) + bytes)
+                .apply();
+    }
+
+    /**
+     * Records that the user opened the details of a book.
+     *
+     * @param prefetchedBytes size of the prefetched details that were used, or 0 if they
+     *                        were not prefetched
+     */
+    public synchronized void recordDetailOpen(long prefetchedBytes) {
+        SharedPreferences.Editor editor = prefs.edit()
+                .putLong(KEY_DETAIL_OPENS, prefs.getLong(KEY_DETAIL_OPENS, 0) + 1);
+        if (prefetchedBytes > 0) {
+            editor.putLong(KEY_PREFETCH_HITS, prefs.getLong(KEY_PREFETCH_HITS, 0) + 1)
+                    .putLong(KEY_PREFETCH_HIT_BYTES, prefs.getLong(KEY_PREFETCH_HIT_BYTES, 0) + prefetchedBytes);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Part of the prefetched details that the user actually opened.
+     */
+    public synchronized double getPrefetchHitRatio() {
+        long prefetches = prefs.getLong(KEY_PREFETCHES, 0);
+        return prefetches == 0 ? 0 : (double) prefs.getLong(KEY_PREFETCH_HITS, 0) / prefetches;
+    }
+
+    /**
+     * Part of the prefetched bytes that were never used.
+     */
+    public synchronized double getPrefetchWasteRatio() {
+        long bytes = prefs.getLong(KEY_PREFETCH_BYTES, 0);
+        return bytes == 0 ? 0 : 1 - (double) prefs.getLong(KEY_PREFETCH_HIT_BYTES, 0) / bytes;
+    }
+
+    /**
+     * Part of the opened details that were prefetched, and thus opened instantly.
+     */
+    public synchronized double getPrefetchCoverage() {
+        long opens = prefs.getLong(KEY_DETAIL_OPENS, 0);
+        return opens == 0 ? 0 : (double) prefs.getLong(KEY_PREFETCH_HITS, 0) / opens;
+    }
+
+    /**
+     * Exponential moving average of the stored value and a new sample, recent samples weigh more.
+     */
+    private long average(String key, long sample) {
+        long average = prefs.getLong(key, sample);
+        return (average * 3 + sample) / 4;
+    }
+
+    private List<String> rankedQueries() {
+        final long now = System.currentTimeMillis();
+        List<String> urls = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (entry.getKey().startsWith(COUNT_PREFIX)) {
+                urls.add(entry.getKey().substring(COUNT_PREFIX.length()));
+            }
+        }
+        Collections.sort(urls, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Double.compare(score(b, now), score(a, now));
+            }
+        });
+        return urls;
+    }
+
+    /**
+     * Frequency of a query, decaying with the number of days since it was last used.
+     */
+    private double score(String url, long now) {
+        int count = prefs.getInt(COUNT_PREFIX + url, 0);
+        long lastUsed = prefs.getLong(LAST_USED_PREFIX + url, 0);
+        double days = (double) (now - lastUsed) / TimeUnit.DAYS.toMillis(1);
+        return count / (1 + Math.max(0, days));
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.android.bookfinder;
 
 import android.text.TextUtils;
+import android.util.JsonReader;
 import android.util.Log;
 
 import org.json.JSONArray;
@@ -8,23 +9,30 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.net.ssl.HttpsURLConnection;
-
 /**
  * Helper methods related to requesting and receiving book data.
  */
 public final class QueryUtils {
     private static final String TAG = QueryUtils.class.getSimpleName();
 
+    /**
+     * Number of books per batch when parsing incrementally. The very first batch only
+     * holds a single book, so the first row can be shown as early as possible.
+     */
+    private static final int BATCH_SIZE = 5;
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -34,9 +42,9 @@ public final class QueryUtils {
     }
 
     /**
-     * Query the USGS dataset and return a list of {@link Book} objects.
+     * Query the Google Books API and return the raw JSON response, or null if the request failed.
      */
-    public static List<Book> fetchBooks(String requestUrl) {
+    public static String fetchBookJson(String requestUrl) {
         // Create URL object
         URL url = createUrl(requestUrl);
 
@@ -47,10 +55,62 @@ public final class QueryUtils {
         } catch (IOException e) {
             Log.e(TAG, "Problem making the HTTP request.", e);
         }
+        return jsonResponse;
+    }
 
-        // Extract relevant fields from the JSON response and create a list of {@link Book}s
-        // Return the list of {@link Book}s
-        return extractFromJson(jsonResponse);
+    /**
+     * Query the Google Books API and parse the response while it is still downloading,
+     * handing the books to the callback in small batches as soon as they are parsed.
+     * Must be called on a background thread, the callback is called on the same thread.
+     *
+     * @param rawJson receives the whole JSON response, so it can be cached
+     * @return the complete page, or null if the request failed
+     */
+    public static BookPage fetchPageIncrementally(String requestUrl, BatchCallback callback,
+                                                  StringBuilder rawJson) {
+        URL url = createUrl(requestUrl);
+        if (url == null) {
+            return null;
+        }
+
+        HttpURLConnection urlConnection = null;
+        JsonReader reader = null;
+        try {
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setReadTimeout(10000 /* milliseconds */);
+            urlConnection.setConnectTimeout(15000 /* milliseconds */);
+            urlConnection.setRequestMethod("GET");
+            urlConnection.connect();
+
+            // If the request was successful (response code 200),
+            // then parse the input stream while it is being read.
+            if (urlConnection.getResponseCode() != 200) {
+                Log.e(TAG, "Error response code: " + urlConnection.getResponseCode());
+                return null;
+            }
+
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            InputStream inputStream = new TeeInputStream(urlConnection.getInputStream(), copy);
+            reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+            BookPage page = readPage(reader, callback);
+            rawJson.append(copy.toString("UTF-8"));
+            return page;
+        } catch (IOException | IllegalStateException e) {
+            // JsonReader reports malformed JSON as IllegalStateException
+            Log.e(TAG, "Problem retrieving the book JSON results.", e);
+            return null;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Problem closing the book JSON results.", e);
+                }
+            }
+        }
     }
 
     /**
@@ -77,10 +137,10 @@ public final class QueryUtils {
             return jsonResponse;
         }
 
-        HttpsURLConnection urlConnection = null;
+        HttpURLConnection urlConnection = null;
         InputStream inputStream = null;
         try {
-            urlConnection = (HttpsURLConnection) url.openConnection();
+            urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setReadTimeout(10000 /* milliseconds */);
             urlConnection.setConnectTimeout(15000 /* milliseconds */);
             urlConnection.setRequestMethod("GET");
@@ -129,7 +189,16 @@ public final class QueryUtils {
      * Return a list of {@link Book} objects that has been built up from
      * parsing the given JSON response.
      */
-    private static List<Book> extractFromJson(String earthquakeJSON) {
+    static List<Book> extractFromJson(String earthquakeJSON) {
+        BookPage page = extractPage(earthquakeJSON);
+        return page == null ? null : page.getBooks();
+    }
+
+    /**
+     * Return a {@link BookPage} with the {@link Book} objects of the given JSON response,
+     * and the total number of books matching the query.
+     */
+    static BookPage extractPage(String earthquakeJSON) {
         // If the JSON string is empty or null, then return early.
         if (TextUtils.isEmpty(earthquakeJSON)) {
             return null;
@@ -137,11 +206,15 @@ public final class QueryUtils {
 
         // Create an empty ArrayList that we can start adding books to
         List<Book> books = new ArrayList<>();
+        int totalItems = 0;
 
         try {
             // Create a JSONObject from the JSON response string
             JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
 
+            // Total number of matches, of which this response is one page
+            totalItems = baseJsonResponse.optInt("totalItems", 0);
+
             // Extract the JSONArray associated with the key called "items",
             // which represents a list of books.
             if (baseJsonResponse.has("items")) {
@@ -149,60 +222,247 @@ public final class QueryUtils {
 
                 // For each book in the bookArray, create a {@link Book} object
                 for (int i = 0; i < bookArray.length(); i++) {
-                    JSONObject currentBook = bookArray.getJSONObject(i);
-                    JSONObject bookInfo = currentBook.getJSONObject("volumeInfo");
-
-                    // Extract the value for the key called "title"
-                    String title = bookInfo.getString("title");
-
-                    // Extract the value of the first element in the JSONArray called "authors"
-                    String author;
-                    if (bookInfo.has("authors")) {
-                        author = bookInfo.getJSONArray("authors").getString(0);
-                    } else {
-                        author = "Unknown author";
-                    }
+                    // Add the new {@link Book} to the list of books.
+                    books.add(extractBook(bookArray.getJSONObject(i)));
+                }
+            }
 
-                    // Extract the value for the key called "smallThumbnail"
-                    String imageUrl;
-                    if (bookInfo.has("imageLinks")) {
-                        imageUrl = bookInfo.getJSONObject("imageLinks").getString("smallThumbnail");
-                    } else {
-                        imageUrl = null;
-                    }
+        } catch (JSONException e) {
+            Log.e(TAG, "Problem parsing the JSON results", e);
+        }
 
-                    // Extract the value for the key called "url"
-                    String bookUrl = bookInfo.getString("infoLink");
+        // Return the page of books
+        return new BookPage(books, totalItems);
+    }
 
-                    JSONObject bookPriceInfo = currentBook.getJSONObject("saleInfo");
+    /**
+     * Read a {@link BookPage} from a JSON response one book at a time, passing them to the
+     * callback in batches along the way.
+     */
+    private static BookPage readPage(JsonReader reader, BatchCallback callback) throws IOException {
+        List<Book> books = new ArrayList<>();
+        List<Book> batch = new ArrayList<>();
+        int batchSize = 1;
+        int totalItems = 0;
 
-                    String bookPrice = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("totalItems")) {
+                totalItems = reader.nextInt();
+            } else if (name.equals("items")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
                     try {
-                        if (bookPriceInfo.getString("saleability").equals("FOR_SALE")) {
-                            JSONObject bookRetailPrice = bookPriceInfo.getJSONObject("retailPrice");
-                            bookPrice = bookRetailPrice.getString("amount") + bookRetailPrice.getString("currencyCode");
-                        } else {
-                            bookPrice = "Not for sale";
-                        }
+                        Book book = extractBook(readObject(reader));
+                        books.add(book);
+                        batch.add(book);
                     } catch (JSONException e) {
-                        Log.e(TAG, "Unable to get JSON objects");
+                        Log.e(TAG, "Problem parsing a JSON result, skipping it", e);
+                    }
+                    if (batch.size() >= batchSize) {
+                        callback.onBatch(batch);
+                        batch = new ArrayList<>();
+                        batchSize = BATCH_SIZE;
                     }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-                    // Create a new {@link Book} object with the title, author, imageUrl,
-                    // and bookUrl from the JSON response.
-                    Book book = new Book(title, author, imageUrl, bookUrl, bookPrice);
+        if (!batch.isEmpty()) {
+            callback.onBatch(batch);
+        }
+        return new BookPage(books, totalItems);
+    }
 
-                    // Add the new {@link Book} to the list of books.
-                    books.add(book);
+    /**
+     * Read the next JSON object from the reader into a {@link JSONObject}, so it can be
+     * handed to the same extraction code as the non-incremental parsing.
+     */
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                // JSONObject converts numbers on access, keep the exact text
+                return reader.nextString();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * Return a {@link Book} object built from a single element of the "items" array.
+     */
+    static Book extractBook(JSONObject currentBook) throws JSONException {
+        // Extract the volume id, which identifies the book in the volumes/{id} endpoint
+        String id = currentBook.optString("id", null);
+
+        JSONObject bookInfo = currentBook.getJSONObject("volumeInfo");
+
+        // Extract the value for the key called "title"
+        String title = bookInfo.getString("title");
+
+        // Extract the value of the first element in the JSONArray called "authors"
+        String author;
+        if (bookInfo.has("authors")) {
+            author = bookInfo.getJSONArray("authors").getString(0);
+        } else {
+            author = "Unknown author";
+        }
+
+        // Extract the value for the key called "smallThumbnail"
+        String imageUrl;
+        if (bookInfo.has("imageLinks")) {
+            imageUrl = bookInfo.getJSONObject("imageLinks").getString("smallThumbnail");
+        } else {
+            imageUrl = null;
+        }
+
+        // Extract the value for the key called "url"
+        String bookUrl = bookInfo.getString("infoLink");
+
+        String bookPrice = extractPrice(currentBook.getJSONObject("saleInfo"));
+
+        // Create a new {@link Book} object with the id, title, author, imageUrl,
+        // and bookUrl from the JSON response.
+        return new Book(id, title, author, imageUrl, bookUrl, bookPrice);
+    }
+
+    /**
+     * Return a {@link BookDetail} object built from the JSON response of the volumes/{id} endpoint.
+     */
+    static BookDetail extractDetail(String detailJSON) {
+        // If the JSON string is empty or null, then return early.
+        if (TextUtils.isEmpty(detailJSON)) {
+            return null;
+        }
+
+        try {
+            JSONObject volume = new JSONObject(detailJSON);
+            JSONObject bookInfo = volume.getJSONObject("volumeInfo");
+
+            // Extract every author, not only the first like the list does
+            String authors = "Unknown author";
+            JSONArray authorArray = bookInfo.optJSONArray("authors");
+            if (authorArray != null && authorArray.length() > 0) {
+                StringBuilder joined = new StringBuilder(authorArray.getString(0));
+                for (int i = 1; i < authorArray.length(); i++) {
+                    joined.append(", ").append(authorArray.getString(i));
                 }
+                authors = joined.toString();
             }
 
+            // Prefer the larger "thumbnail" over the "smallThumbnail" of the list
+            String imageUrl = null;
+            JSONObject imageLinks = bookInfo.optJSONObject("imageLinks");
+            if (imageLinks != null) {
+                imageUrl = imageLinks.optString("thumbnail", imageLinks.optString("smallThumbnail", null));
+            }
+
+            String bookPrice = "";
+            JSONObject saleInfo = volume.optJSONObject("saleInfo");
+            if (saleInfo != null) {
+                bookPrice = extractPrice(saleInfo);
+            }
+
+            return new BookDetail(
+                    volume.getString("id"),
+                    bookInfo.getString("title"),
+                    bookInfo.optString("subtitle", null),
+                    authors,
+                    bookInfo.optString("publisher", null),
+                    bookInfo.optString("publishedDate", null),
+                    bookInfo.optString("description", null),
+                    bookInfo.optInt("pageCount", 0),
+                    imageUrl,
+                    bookInfo.optString("infoLink", null),
+                    bookPrice);
         } catch (JSONException e) {
-            Log.e(TAG, "Problem parsing the JSON results", e);
+            Log.e(TAG, "Problem parsing the JSON details", e);
+            return null;
         }
+    }
 
-        // Return the list of books
-        return books;
+    /**
+     * Return the price from the "saleInfo" object of a volume.
+     */
+    private static String extractPrice(JSONObject bookPriceInfo) {
+        String bookPrice = "";
+        try {
+            if (bookPriceInfo.getString("saleability").equals("FOR_SALE")) {
+                JSONObject bookRetailPrice = bookPriceInfo.getJSONObject("retailPrice");
+                bookPrice = bookRetailPrice.getString("amount") + bookRetailPrice.getString("currencyCode");
+            } else {
+                bookPrice = "Not for sale";
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Unable to get JSON objects");
+        }
+        return bookPrice;
     }
 
+    /**
+     * Receives the books of an incremental fetch in batches.
+     */
+    public interface BatchCallback {
+        void onBatch(List<Book> batch);
+    }
+
+    /**
+     * Copies every byte read from the wrapped stream to another stream.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream copy;
+
+        TeeInputStream(InputStream in, ByteArrayOutputStream ccopy) {
+            super(in);
+            copy = ccopy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                copy.write(buffer, offset, read);
+            }
+            return read;
+        }
+    }
 }
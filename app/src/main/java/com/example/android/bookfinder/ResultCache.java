@@ -0,0 +1,58 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+
+/**
+ * In-memory cache of parsed result pages, keyed by request URL, so repeating a search
+ * does not even have to read and parse the {@link BookCache} entry again.
+ */
+public class ResultCache extends BudgetedLruCache<String, BookPage> {
+
+    /**
+     * Rough overhead of an object header and its references
+     */
+    private static final int OBJECT_OVERHEAD = 16;
+
+    private static ResultCache instance;
+
+    private ResultCache(MemoryBudget budget) {
+        super(R.string.memory_cache_results, MemoryBudget.PRIORITY_RESULTS, (int) (budget.getCapBytes() / 4), budget);
+    }
+
+    /**
+     * Returns the shared {@link ResultCache} of the app.
+     */
+    public static synchronized ResultCache get(Context context) {
+        if (instance == null) {
+            instance = new ResultCache(MemoryBudget.get(context));
+        }
+        return instance;
+    }
+
+    @Override
+    protected int sizeOf(String key, BookPage page) {
+        int size = sizeOf(key) + 2 * OBJECT_OVERHEAD;
+        for (Book book : page.getBooks()) {
+            size += sizeOf(book);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the approximate number of bytes a {@link Book} and its strings occupy.
+     */
+    static int sizeOf(Book book) {
+        return OBJECT_OVERHEAD
+                + sizeOf(book.getId())
+                + sizeOf(book.getTitle())
+                + sizeOf(book.getAuthor())
+                + sizeOf(book.getImageUrl())
+                + sizeOf(book.getBookUrl())
+                + sizeOf(book.getBookPrice());
+    }
+
+    static int sizeOf(String value) {
+        // Strings are UTF-16 internally, plus the String and its char array
+        return value == null ? 0 : 2 * OBJECT_OVERHEAD + 2 * value.length();
+    }
+}
@@ -38,6 +38,15 @@ public class SettingsActivity extends AppCompatActivity {
             bindPreferenceSummaryToValue(orderBy);
         }
 
+        @Override
+        public void onResume() {
+            super.onResume();
+
+            // Show how much memory each cache currently uses
+            Preference memoryUsage = findPreference(getString(R.string.settings_memory_usage_key));
+            memoryUsage.setSummary(MemoryBudget.get(getActivity()).describeUsage());
+        }
+
         @Override
         public boolean onPreferenceChange(Preference preference, Object value) {
             String stringValue = value.toString();
@@ -0,0 +1,302 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds the text layouts of book list items ahead of time and caches them per book and
+ * list width, so binding a row only has to attach them to its {@link LayoutView}s.
+ * <p>
+ * The layouts mirror book_list_item.xml: an all caps title of up to three lines and a
+ * single line author next to the thumbnail, and the price on the far end.
+ * <p>
+ * Until the list reports its width, the layouts are built for the width of the display,
+ * which the list fills. The text sizes follow the system font scale, see
+ * {@link #onConfigurationChanged()}.
+ */
+public final class TextLayouts {
+
+    private static final int TITLE_MAX_LINES = 3;
+    private static final int AUTHOR_MAX_LINES = 1;
+
+    private static TextLayouts instance;
+
+    private final Resources res;
+    private final int titleColor;
+    private final int authorColor;
+
+    /**
+     * Paints of the current font scale, replaced as a whole when it changes
+     */
+    private volatile Paints paints;
+
+    /**
+     * Horizontal space of a row that is never available to the title and author
+     */
+    private final int fixedWidth;
+
+    private final LayoutCache cache;
+
+    private final String loadingText;
+    private final String loadFailedText;
+
+    /**
+     * Title shown while the page of a row is loading, only used on the UI thread
+     */
+    private Layout loading;
+
+    /**
+     * Title shown while the page of a row failed to load, only used on the UI thread
+     */
+    private Layout loadFailed;
+
+    /**
+     * Width of the list the rows are laid out for
+     */
+    private volatile int listWidth;
+
+    private TextLayouts(Context context) {
+        res = context.getResources();
+        titleColor = ContextCompat.getColor(context, R.color.textColorBookTitle);
+        authorColor = ContextCompat.getColor(context, R.color.textColorBookAuthor);
+        paints = new Paints(res, titleColor, authorColor);
+        listWidth = res.getDisplayMetrics().widthPixels;
+
+        fixedWidth = 2 * res.getDimensionPixelSize(R.dimen.book_item_padding_horizontal)
+                + res.getDimensionPixelSize(R.dimen.book_thumbnail_size)
+                + 2 * res.getDimensionPixelSize(R.dimen.book_item_column_margin);
+
+        cache = new LayoutCache(MemoryBudget.get(context));
+        loadingText = context.getString(R.string.loading_book);
+        loadFailedText = context.getString(R.string.load_failed_book);
+    }
+
+    /**
+     * Returns the shared {@link TextLayouts} of the app.
+     */
+    public static synchronized TextLayouts get(Context context) {
+        if (instance == null) {
+            instance = new TextLayouts(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the width of the list the rows are shown in. Layouts for other widths are
+     * not used anymore.
+     */
+    public void setListWidth(int width) {
+        if (width > 0) {
+            listWidth = width;
+        }
+    }
+
+    /**
+     * Called when the configuration of the app changed. If the font scale changed, the
+     * text sizes are updated and the layouts built with the old ones are dropped. A
+     * rotation changes the width of the display, and thereby the list.
+     */
+    public void onConfigurationChanged() {
+        listWidth = res.getDisplayMetrics().widthPixels;
+        Configuration configuration = res.getConfiguration();
+        if (configuration.fontScale != paints.fontScale) {
+            paints = new Paints(res, titleColor, authorColor);
+            cache.evictAll();
+            loading = null;
+            loadFailed = null;
+        }
+    }
+
+    /**
+     * Lays out the texts of the given books for the current list width, unless they are
+     * cached already. Called on a background thread while the books are loaded.
+     */
+    public void precompute(List<Book> books) {
+        int width = listWidth;
+        Paints current = paints;
+        if (width <= 0 || books == null) {
+            return;
+        }
+        for (Book book : books) {
+            String key = key(book, width, current);
+            if (cache.get(key) == null) {
+                cache.put(key, build(book, width, current));
+            }
+        }
+    }
+
+    /**
+     * Returns the layouts of the given book for the current list width. They are built
+     * right away if they were not precomputed, which is what precomputing should avoid.
+     */
+    public RowLayouts get(Book book) {
+        int width = listWidth;
+        Paints current = paints;
+        String key = key(book, width, current);
+        RowLayouts layouts = cache.get(key);
+        if (layouts == null) {
+            layouts = build(book, width, current);
+            cache.put(key, layouts);
+        }
+        return layouts;
+    }
+
+    /**
+     * Returns the layout of the placeholder title of rows that are still loading.
+     */
+    public Layout getLoading() {
+        int textWidth = Math.max(1, listWidth - fixedWidth);
+        if (loading == null || loading.getWidth() != textWidth) {
+            loading = newLayout(loadingText, paints.author, textWidth);
+        }
+        return loading;
+    }
+
+    /**
+     * Returns the layout of the placeholder title of rows whose page failed to load.
+     */
+    public Layout getLoadFailed() {
+        int textWidth = Math.max(1, listWidth - fixedWidth);
+        if (loadFailed == null || loadFailed.getWidth() != textWidth) {
+            loadFailed = newLayout(loadFailedText, paints.author, textWidth);
+        }
+        return loadFailed;
+    }
+
+    private RowLayouts build(Book book, int width, Paints current) {
+        // Paints are not thread safe, so every build works on its own copies
+        TextPaint titleCopy = new TextPaint(current.title);
+        TextPaint authorCopy = new TextPaint(current.author);
+        TextPaint priceCopy = new TextPaint(current.price);
+
+        String priceText = nonNull(book.getBookPrice());
+        int priceWidth = (int) Math.ceil(Layout.getDesiredWidth(priceText, priceCopy));
+        Layout price = newLayout(priceText, priceCopy, priceWidth);
+
+        int textWidth = Math.max(1, width - fixedWidth - priceWidth);
+        Layout title = newLayout(nonNull(book.getTitle()).toUpperCase(Locale.getDefault()),
+                titleCopy, textWidth, TITLE_MAX_LINES);
+        Layout author = newLayout(nonNull(book.getAuthor()), authorCopy, textWidth, AUTHOR_MAX_LINES);
+
+        return new RowLayouts(title, author, price);
+    }
+
+    /**
+     * Lays out the text in at most {@code maxLines} lines, ellipsizing the end of the last one.
+     */
+    private static Layout newLayout(String text, TextPaint paint, int width, int maxLines) {
+        Layout layout = newLayout(text, paint, width);
+        if (layout.getLineCount() <= maxLines) {
+            return layout;
+        }
+        int lastLineStart = layout.getLineStart(maxLines - 1);
+        CharSequence lastLine = TextUtils.ellipsize(
+                text.substring(lastLineStart), paint, width, TextUtils.TruncateAt.END);
+        return newLayout(text.substring(0, lastLineStart) + lastLine, paint, width);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Layout newLayout(String text, TextPaint paint, int width) {
+        return new StaticLayout(text, paint, Math.max(1, width), Layout.Alignment.ALIGN_NORMAL,
+                1f, 0f, true);
+    }
+
+    private static String key(Book book, int width, Paints current) {
+        // Layouts of an old font scale that were still being built must not be found.
+        // Editions can share an info link, the volume id is what tells books apart.
+        String id = TextUtils.isEmpty(book.getId()) ? book.getBookUrl() : book.getId();
+        return id + '@' + width + '@' + current.fontScale;
+    }
+
+    private static String nonNull(String text) {
+        return text == null ? "" : text;
+    }
+
+    /**
+     * The paints of the list item texts at one font scale.
+     */
+    private static class Paints {
+        final float fontScale;
+        final TextPaint title;
+        final TextPaint author;
+        final TextPaint price;
+
+        Paints(Resources res, int titleColor, int authorColor) {
+            // The sp text sizes already include the font scale of the configuration
+            fontScale = res.getConfiguration().fontScale;
+            title = newPaint(res.getDimension(R.dimen.book_title_text_size), titleColor);
+            title.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+            author = newPaint(res.getDimension(R.dimen.book_author_text_size), authorColor);
+            price = newPaint(res.getDimension(R.dimen.book_price_text_size), titleColor);
+        }
+
+        private static TextPaint newPaint(float textSize, int color) {
+            TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+            paint.setTextSize(textSize);
+            paint.setColor(color);
+            return paint;
+        }
+    }
+
+    /**
+     * The text layouts of a single book list item.
+     */
+    public static class RowLayouts {
+        private final Layout title;
+        private final Layout author;
+        private final Layout price;
+
+        RowLayouts(Layout ttitle, Layout aauthor, Layout pprice) {
+            title = ttitle;
+            author = aauthor;
+            price = pprice;
+        }
+
+        public Layout getTitle() {
+            return title;
+        }
+
+        public Layout getAuthor() {
+            return author;
+        }
+
+        public Layout getPrice() {
+            return price;
+        }
+
+        /**
+         * Returns the approximate number of bytes the layouts occupy.
+         */
+        int sizeBytes() {
+            return sizeOf(title) + sizeOf(author) + sizeOf(price);
+        }
+
+        private static int sizeOf(Layout layout) {
+            // The text itself, plus the per line bookkeeping of StaticLayout
+            return 64 + 2 * layout.getText().length() + 32 * layout.getLineCount();
+        }
+    }
+
+    private static class LayoutCache extends BudgetedLruCache<String, RowLayouts> {
+
+        LayoutCache(MemoryBudget budget) {
+            super(R.string.memory_cache_text_layouts, MemoryBudget.PRIORITY_TEXT_LAYOUTS,
+                    (int) (budget.getCapBytes() / 8), budget);
+        }
+
+        @Override
+        protected int sizeOf(String key, RowLayouts layouts) {
+            return 2 * key.length() + layouts.sizeBytes();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.android.bookfinder;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Cache;
+
+/**
+ * Picasso's memory cache of decoded thumbnails, as part of the {@link MemoryBudget}.
+ */
+public class ThumbnailCache extends BudgetedLruCache<String, Bitmap> implements Cache {
+
+    /**
+     * Constructs a new {@link ThumbnailCache} that may use up to half of the budget.
+     *
+     * @param budget the cache is registered with
+     */
+    public ThumbnailCache(MemoryBudget budget) {
+        super(R.string.memory_cache_thumbnails, MemoryBudget.PRIORITY_THUMBNAILS,
+                (int) (budget.getCapBytes() / 2), budget);
+    }
+
+    @Override
+    protected int sizeOf(String key, Bitmap value) {
+        return value.getRowBytes() * value.getHeight();
+    }
+
+    @Override
+    public void set(String key, Bitmap bitmap) {
+        put(key, bitmap);
+    }
+
+    @Override
+    public int size() {
+        return (int) sizeBytes();
+    }
+
+    @Override
+    public int maxSize() {
+        return maxSizeBytes();
+    }
+
+    @Override
+    public void clear() {
+        evictAll();
+    }
+
+    @Override
+    public void clearKeyUri(String keyPrefix) {
+        for (String key : snapshot().keySet()) {
+            if (key.startsWith(keyPrefix)) {
+                remove(key);
+            }
+        }
+    }
+}
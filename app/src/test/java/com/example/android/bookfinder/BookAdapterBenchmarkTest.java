@@ -0,0 +1,319 @@
+package com.example.android.bookfinder;
+
+import android.app.Application;
+import android.net.Uri;
+import android.view.View;
+import android.widget.ListView;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.Picasso;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark and regression test of the list hot path: {@link BookAdapter#getView} with its
+ * ViewHolder binding through ButterKnife, the precomputed text layouts and the Picasso
+ * request setup.
+ * <p>
+ * It scrolls through thousands of synthetic books, recycling a screenful of row views the
+ * way ListView does, and reports bind time and allocations per row. It fails when they go
+ * over the budgets in bookadapter-benchmark.properties.
+ * <p>
+ * Allocations don't depend on the load of the machine, so their budget is checked on every
+ * build. Wall clock budgets are only meaningful on a quiet machine, so bind time is only
+ * checked when asked for with {@code ./gradlew testDebugUnitTest -Pbenchmark}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class BookAdapterBenchmarkTest {
+
+    private static final int BOOK_COUNT = 5000;
+
+    /**
+     * Rows a screen holds, and therefore the number of views that get recycled
+     */
+    private static final int VISIBLE_ROWS = 12;
+
+    /**
+     * Rows the loader or page prefetch lays out ahead of the binds, like a page of results
+     */
+    private static final int PREFETCH_ROWS = 40;
+
+    private static final int LIST_WIDTH = 1080;
+    private static final int LIST_HEIGHT = 1920;
+
+    private static boolean picassoInstalled;
+
+    /**
+     * The HotSpot ThreadMXBean and its getThreadAllocatedBytes(long), null if the JVM
+     * can't tell allocations
+     */
+    private static Object threadBean;
+    private static Method threadAllocatedBytes;
+
+    static {
+        // The management API is not in android.jar, which the tests compile against
+        try {
+            threadBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Class<?> hotspot = Class.forName("com.sun.management.ThreadMXBean");
+            if (hotspot.isInstance(threadBean)
+                    && (Boolean) hotspot.getMethod("isThreadAllocatedMemorySupported").invoke(threadBean)
+                    && (Boolean) hotspot.getMethod("isThreadAllocatedMemoryEnabled").invoke(threadBean)) {
+                threadAllocatedBytes = hotspot.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (ReflectiveOperationException e) {
+            // Not a HotSpot JVM, allocations are not measured
+        }
+    }
+
+    private Application context;
+    private ListView parent;
+    private BookAdapter adapter;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        installOfflinePicasso();
+
+        parent = new ListView(context);
+        parent.layout(0, 0, LIST_WIDTH, LIST_HEIGHT);
+
+        adapter = new BookAdapter(context);
+        adapter.setWindow(new BookWindow(context, queryUrl(), syntheticPage(), new BookWindow.Listener() {
+            @Override
+            public void onWindowChanged() {
+            }
+        }));
+    }
+
+    @Test
+    public void scrollBindAllocatesWithinBudget() throws Exception {
+        long maxAllocatedBytes = Long.parseLong(loadBudget().getProperty("maxAllocatedBytesPerRow"));
+
+        Result result = measuredScroll();
+        Assume.assumeTrue("Allocation tracking is not supported by this JVM", result.allocatedBytes >= 0);
+        assertTrue(String.format(Locale.US, "Allocations regressed: %d bytes/row, budget %d bytes/row",
+                result.allocatedBytesPerRow(), maxAllocatedBytes),
+                result.allocatedBytesPerRow() <= maxAllocatedBytes);
+    }
+
+    @Test
+    public void scrollBindStaysWithinTimeBudget() throws Exception {
+        Assume.assumeTrue("Bind time is only checked with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        long maxBindMicros = Long.parseLong(loadBudget().getProperty("maxBindMicrosPerRow"));
+
+        Result result = measuredScroll();
+        assertTrue(String.format(Locale.US, "Bind time regressed: %.1f us/row, budget %d us/row",
+                result.bindMicrosPerRow(), maxBindMicros),
+                result.bindMicrosPerRow() <= maxBindMicros);
+    }
+
+    @Test
+    public void recycledRowsShowTheirOwnBook() {
+        TextLayouts textLayouts = TextLayouts.get(context);
+        View[] pool = new View[VISIBLE_ROWS];
+        for (int position = 0; position < 3 * VISIBLE_ROWS; position++) {
+            View row = adapter.getView(position, pool[position % VISIBLE_ROWS], parent);
+            pool[position % VISIBLE_ROWS] = row;
+
+            // The layouts of this very book, however its title got ellipsized
+            TextLayouts.RowLayouts expected = textLayouts.get(adapter.getItem(position));
+            BookAdapter.ViewHolder holder = (BookAdapter.ViewHolder) row.getTag();
+            assertNotNull(holder.titleView.getTextLayout());
+            assertEquals(expected.getTitle().getText().toString(),
+                    holder.titleView.getTextLayout().getText().toString());
+            assertEquals(expected.getAuthor().getText().toString(),
+                    holder.authorView.getTextLayout().getText().toString());
+            // Read out as written, not as the upper-cased text that is drawn
+            assertEquals(adapter.getItem(position).getTitle(),
+                    holder.titleView.getContentDescription().toString());
+        }
+    }
+
+    /**
+     * Scrolls through all rows after warming up and reports the numbers of the last scroll.
+     */
+    private Result measuredScroll() {
+        // Warm up the JIT and the inflated row views before measuring anything
+        scroll();
+        scroll();
+
+        Result result = scroll();
+        System.out.println(String.format(Locale.US,
+                "BookAdapter benchmark: %d rows, %.1f us/row bind, %d bytes/row allocated, "
+                        + "%.1f us/row inflate",
+                result.recycledRows, result.bindMicrosPerRow(), result.allocatedBytesPerRow(),
+                result.inflateMicrosPerRow()));
+        return result;
+    }
+
+    /**
+     * Binds every row once from top to bottom, recycling views like ListView does, with the
+     * text layouts of each page computed just before its rows come into view.
+     */
+    private Result scroll() {
+        TextLayouts textLayouts = TextLayouts.get(context);
+        textLayouts.setListWidth(LIST_WIDTH);
+        BookWindow window = adapter.getWindow();
+
+        Result result = new Result();
+        View[] pool = new View[VISIBLE_ROWS];
+        List<Book> prefetch = new ArrayList<>(PREFETCH_ROWS);
+
+        for (int position = 0; position < adapter.getCount(); position++) {
+            if (position % PREFETCH_ROWS == 0) {
+                prefetch.clear();
+                for (int i = position; i < Math.min(position + PREFETCH_ROWS, adapter.getCount()); i++) {
+                    prefetch.add(window.getItem(i));
+                }
+                textLayouts.precompute(prefetch);
+            }
+
+            View convertView = pool[position % VISIBLE_ROWS];
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+
+            pool[position % VISIBLE_ROWS] = adapter.getView(position, convertView, parent);
+
+            long elapsed = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+
+            if (convertView == null) {
+                result.inflatedRows++;
+                result.inflateNanos += elapsed;
+            } else {
+                result.recycledRows++;
+                result.bindNanos += elapsed;
+                if (allocatedBefore < 0 || allocatedAfter < 0) {
+                    result.allocatedBytes = -1;
+                } else if (result.allocatedBytes >= 0) {
+                    result.allocatedBytes += allocatedAfter - allocatedBefore;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        if (threadAllocatedBytes == null) {
+            return -1;
+        }
+        try {
+            return (Long) threadAllocatedBytes.invoke(threadBean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Makes Picasso set up real requests for the thumbnails without touching the network.
+     */
+    private void installOfflinePicasso() {
+        if (picassoInstalled) {
+            return;
+        }
+        Picasso.setSingletonInstance(new Picasso.Builder(context)
+                .downloader(new Downloader() {
+                    @Override
+                    public Response load(Uri uri, int networkPolicy) throws IOException {
+                        throw new IOException("The benchmark does not download thumbnails");
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+                })
+                .memoryCache(new ThumbnailCache(MemoryBudget.get(context)))
+                .build());
+        picassoInstalled = true;
+    }
+
+    private static Properties loadBudget() throws IOException {
+        Properties budget = new Properties();
+        InputStream in = BookAdapterBenchmarkTest.class.getClassLoader()
+                .getResourceAsStream("bookadapter-benchmark.properties");
+        try {
+            budget.load(in);
+        } finally {
+            in.close();
+        }
+        return budget;
+    }
+
+    private static String queryUrl() {
+        // One page holding every book, so the window never has to load anything
+        return "https://www.googleapis.com/books/v1/volumes?q=benchmark&maxResults=" + BOOK_COUNT;
+    }
+
+    private static BookPage syntheticPage() {
+        List<Book> books = new ArrayList<>(BOOK_COUNT);
+        for (int i = 0; i < BOOK_COUNT; i++) {
+            books.add(new Book(
+                    "volume" + i,
+                    titleOf(i),
+                    "Author " + i,
+                    "http://books.example.com/thumbnail/" + i + ".png",
+                    "http://books.example.com/info/" + i,
+                    (i % 3 == 0) ? "Not for sale" : (i % 100) + ".99EUR"));
+        }
+        return new BookPage(books, BOOK_COUNT);
+    }
+
+    /**
+     * Titles of varying length and script, some long enough to be ellipsized.
+     */
+    private static String titleOf(int i) {
+        switch (i % 4) {
+            case 0:
+                return "Book " + i;
+            case 1:
+                return "Android programming " + i + ": a very long title that needs more than one line";
+            case 2:
+                return "Книга " + i + " о программировании для Android и многом другом";
+            default:
+                return "本 " + i + " アンドロイドのプログラミング入門と実践的な設計パターン";
+        }
+    }
+
+    private static class Result {
+        int inflatedRows;
+        int recycledRows;
+        long inflateNanos;
+        long bindNanos;
+        long allocatedBytes;
+
+        double bindMicrosPerRow() {
+            return recycledRows == 0 ? 0 : bindNanos / 1000.0 / recycledRows;
+        }
+
+        double inflateMicrosPerRow() {
+            return inflatedRows == 0 ? 0 : inflateNanos / 1000.0 / inflatedRows;
+        }
+
+        long allocatedBytesPerRow() {
+            return recycledRows == 0 ? 0 : allocatedBytes / recycledRows;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.bookfinder;
+
+import android.app.Application;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls a {@link BookWindow} over result pages that are already in the
+ * {@link ResultCache}, so no page has to come from the network.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class BookWindowTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int PAGE_COUNT = 40;
+    private static final int VISIBLE_ROWS = 12;
+
+    /**
+     * Visible rows span at most three pages, plus the margin on either side
+     */
+    private static final int MAX_RESIDENT_BOOKS = 5 * PAGE_SIZE;
+
+    private static int queries;
+
+    private Application context;
+    private String queryUrl;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        // Each test gets its own query, the caches are shared by the whole process
+        queryUrl = "https://www.googleapis.com/books/v1/volumes?q=window" + (queries++)
+                + "&maxResults=" + PAGE_SIZE;
+
+        // Loaded pages are posted from the loading threads, deliver them on the test thread
+        Robolectric.getForegroundThreadScheduler().pause();
+    }
+
+    @After
+    public void tearDown() {
+        Robolectric.getForegroundThreadScheduler().unPause();
+    }
+
+    @Test
+    public void residentBooksStayBoundedWhileScrolling() throws Exception {
+        BookWindow window = newWindow(new int[0]);
+        assertEquals(PAGE_COUNT * PAGE_SIZE, window.getCount());
+
+        for (int first = 0; first + VISIBLE_ROWS <= window.getCount(); first += 3) {
+            scrollTo(window, first);
+            assertTrue("Holding " + window.residentCount() + " books at row " + first,
+                    window.residentCount() <= MAX_RESIDENT_BOOKS);
+        }
+
+        // And all the way back up
+        for (int first = window.getCount() - VISIBLE_ROWS; first >= 0; first -= 7) {
+            scrollTo(window, first);
+            assertTrue("Holding " + window.residentCount() + " books at row " + first,
+                    window.residentCount() <= MAX_RESIDENT_BOOKS);
+        }
+        window.release();
+    }
+
+    @Test
+    public void shortPageInTheMiddleShiftsLaterBooks() throws Exception {
+        int[] sizes = new int[PAGE_COUNT];
+        sizes[2] = 7;
+        BookWindow window = newWindow(sizes);
+
+        scrollTo(window, 20);
+        assertEquals(PAGE_COUNT * PAGE_SIZE - 3, window.getCount());
+        assertEquals("p2b6", window.getItem(26).getTitle());
+        assertEquals("p3b0", window.getItem(27).getTitle());
+
+        // The results go on after the short page, down to the last one
+        scrollTo(window, window.getCount() - VISIBLE_ROWS);
+        assertEquals("p" + (PAGE_COUNT - 1) + "b" + (PAGE_SIZE - 1),
+                window.getItem(window.getCount() - 1).getTitle());
+        window.release();
+    }
+
+    @Test
+    public void emptyPageEndsTheResults() throws Exception {
+        int[] sizes = new int[PAGE_COUNT];
+        sizes[3] = -1;
+        BookWindow window = newWindow(sizes);
+
+        // Rows of the empty page are visible, they disappear once it arrives
+        scrollTo(window, 25);
+        assertEquals(3 * PAGE_SIZE, window.getCount());
+        window.release();
+    }
+
+    /**
+     * Puts the pages of a result set into the cache and returns a window over them.
+     *
+     * @param sizes of the pages, 0 for a full page and -1 for an empty one
+     */
+    private BookWindow newWindow(int[] sizes) {
+        ResultCache results = ResultCache.get(context);
+        BookPage firstPage = null;
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            int size = page < sizes.length && sizes[page] != 0 ? Math.max(0, sizes[page]) : PAGE_SIZE;
+            List<Book> books = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                books.add(new Book("v" + page + "-" + i, "p" + page + "b" + i, "Author",
+                        null, "http://books.example.com/" + page + "/" + i, "Not for sale"));
+            }
+            BookPage bookPage = new BookPage(books, PAGE_COUNT * PAGE_SIZE);
+            results.put(BookSource.pageUrl(queryUrl, page), bookPage);
+            if (page == 0) {
+                firstPage = bookPage;
+            }
+        }
+        return new BookWindow(context, queryUrl, firstPage, new BookWindow.Listener() {
+            @Override
+            public void onWindowChanged() {
+            }
+        });
+    }
+
+    private static void scrollTo(BookWindow window, int first) throws InterruptedException {
+        window.onVisibleRangeChanged(first, VISIBLE_ROWS);
+        for (int position = first; position < Math.min(first + VISIBLE_ROWS, window.getCount()); position++) {
+            waitFor(window, position);
+        }
+    }
+
+    /**
+     * Waits until the book at the given position is loaded, or the results turned out
+     * to end before it.
+     */
+    private static void waitFor(BookWindow window, int position) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (position < window.getCount() && window.getItem(position) == null) {
+            assertTrue("Row " + position + " never loaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+            Robolectric.flushBackgroundThreadScheduler();
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        if (position < window.getCount()) {
+            assertNotNull(window.getItem(position));
+        }
+    }
+}
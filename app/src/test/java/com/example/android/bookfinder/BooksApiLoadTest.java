@@ -0,0 +1,113 @@
+package com.example.android.bookfinder;
+
+import android.app.Application;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End-to-end load test of the fetch pipeline against the {@link MockBooksServer}, from the
+ * HTTP request through parsing to the disk and memory caches.
+ * <p>
+ * It takes a while, so it only runs when asked for with
+ * {@code ./gradlew testDebugUnitTest -Ploadtest}. The reports go to the standard output.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class BooksApiLoadTest {
+
+    /**
+     * Books on the first recorded page, which is the one every query loads
+     */
+    private static final int RECORDED_BOOKS = 10;
+
+    /**
+     * Books on the third recorded page, which came back short
+     */
+    private static final int SHORT_PAGE_BOOKS = 7;
+
+    private Application context;
+    private MockBooksServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue("Load tests run with -Ploadtest", Boolean.getBoolean("loadtest"));
+        context = RuntimeEnvironment.application;
+        server = new MockBooksServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void pagesAreReplayedByStartIndex() throws Exception {
+        server.start();
+        String queryUrl = server.queryUrl("paging", 10);
+
+        assertEquals(RECORDED_BOOKS, BookSource.load(context, BookSource.pageUrl(queryUrl, 0)).getBooks().size());
+        assertEquals(SHORT_PAGE_BOOKS, BookSource.load(context, BookSource.pageUrl(queryUrl, 2)).getBooks().size());
+
+        // Past the recorded pages the results end
+        assertTrue(BookSource.load(context, BookSource.pageUrl(queryUrl, 4)).getBooks().isEmpty());
+    }
+
+    @Test
+    public void steadyLoadWithLongTailLatency() throws Exception {
+        server.setLatency(MockBooksServer.Latency.logNormal(80, 0.5)).start();
+
+        LoadTestHarness.Report report = new LoadTestHarness(context, server, 16, 400, false).run("steady");
+        System.out.println(report);
+
+        assertTrue("Queries crashed: " + report.crashes, report.crashes.isEmpty());
+        assertEquals(400, report.succeeded);
+        assertEquals(RECORDED_BOOKS, report.minBooks);
+    }
+
+    @Test
+    public void errorsAndThrottlingFailQueriesCleanly() throws Exception {
+        server.setLatency(MockBooksServer.Latency.uniform(20, 60))
+                .setErrorRate(0.1)
+                .setMaxRequestsPerSecond(100)
+                .start();
+
+        LoadTestHarness.Report report = new LoadTestHarness(context, server, 32, 300, false).run("faulty");
+        System.out.println(report);
+
+        // Every failure of the server is a query without a page, and nothing else is
+        assertTrue("Queries crashed: " + report.crashes, report.crashes.isEmpty());
+        assertTrue("The server was expected to throttle", report.throttled > 0);
+        assertEquals(report.serverErrors + report.throttled, report.failed);
+        assertEquals(300 - report.failed, report.succeeded);
+    }
+
+    @Test
+    public void slowDripDeliversBatchesBeforeTheBodyEnds() throws Exception {
+        // The first recorded page trickles out over about a second
+        server.setLatency(MockBooksServer.Latency.fixed(50))
+                .setSlowDrip(512, 25)
+                .start();
+
+        LoadTestHarness.Report report = new LoadTestHarness(context, server, 8, 40, true).run("drip");
+        System.out.println(report);
+
+        assertTrue("Queries crashed: " + report.crashes, report.crashes.isEmpty());
+        assertEquals(40, report.succeeded);
+        assertEquals(RECORDED_BOOKS, report.minBooks);
+        assertEquals(40, report.firstBatchLatencies.size());
+        assertTrue("The first rows should arrive well before the whole page",
+                report.firstBatchPercentileMillis(95) < report.percentileMillis(50));
+    }
+}
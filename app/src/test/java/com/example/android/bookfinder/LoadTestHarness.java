@@ -0,0 +1,228 @@
+package com.example.android.bookfinder;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives many concurrent queries through the fetch pipeline of the app, the same
+ * {@link BookSource#load} that {@link BookLoader} runs in the background, against a
+ * {@link MockBooksServer}, and reports throughput, latencies, failures and heap use.
+ * <p>
+ * Every request searches for a term of its own, so they all miss the caches and go to
+ * the server, like a crowd of users with different queries would.
+ */
+public class LoadTestHarness {
+
+    /**
+     * How often the heap is sampled while the load runs
+     */
+    private static final long HEAP_SAMPLE_MILLIS = 20;
+
+    private final Context context;
+    private final MockBooksServer server;
+    private final int concurrency;
+    private final int requestCount;
+    private final boolean incremental;
+
+    /**
+     * @param concurrency  number of queries in flight at the same time
+     * @param requestCount number of queries in total
+     * @param incremental  whether the responses are parsed while they download, as
+     *                     {@link BookLoader} does, or only after they are complete
+     */
+    public LoadTestHarness(Context ccontext, MockBooksServer sserver, int cconcurrency,
+                           int rrequestCount, boolean iincremental) {
+        context = ccontext;
+        server = sserver;
+        concurrency = cconcurrency;
+        requestCount = rrequestCount;
+        incremental = iincremental;
+    }
+
+    public Report run(final String name) throws Exception {
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        final AtomicLong heapPeak = new AtomicLong(heapBefore);
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                if (used > heapPeak.get()) {
+                    heapPeak.set(used);
+                }
+            }
+        }, 0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        List<Future<Sample>> futures = new ArrayList<>(requestCount);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < requestCount; i++) {
+                final String url = server.queryUrl(name + i, 10);
+                futures.add(clients.submit(new Callable<Sample>() {
+                    @Override
+                    public Sample call() {
+                        return load(url);
+                    }
+                }));
+            }
+
+            Report report = new Report(name);
+            for (Future<Sample> future : futures) {
+                report.add(future.get());
+            }
+            report.elapsedNanos = System.nanoTime() - start;
+            report.heapBefore = heapBefore;
+            report.heapPeak = heapPeak.get();
+            report.budgetUsedBytes = MemoryBudget.get(context).usedBytes();
+            report.requests = server.getRequestCount();
+            report.serverErrors = server.getErrorCount();
+            report.throttled = server.getThrottledCount();
+            return report;
+        } finally {
+            clients.shutdownNow();
+            sampler.shutdownNow();
+        }
+    }
+
+    private Sample load(String url) {
+        final Sample sample = new Sample();
+        final long start = System.nanoTime();
+        BookPage page;
+        try {
+            if (incremental) {
+                page = BookSource.load(context, url, new QueryUtils.BatchCallback() {
+                    @Override
+                    public void onBatch(List<Book> batch) {
+                        if (sample.firstBatchNanos == 0) {
+                            sample.firstBatchNanos = System.nanoTime() - start;
+                        }
+                    }
+                });
+            } else {
+                page = BookSource.load(context, url);
+            }
+        } catch (RuntimeException e) {
+            // The pipeline is supposed to turn every failure into a null page
+            sample.crash = e;
+            page = null;
+        }
+        sample.nanos = System.nanoTime() - start;
+        sample.books = page == null ? -1 : page.getBooks().size();
+        return sample;
+    }
+
+    /**
+     * Outcome of a single query.
+     */
+    static class Sample {
+        long nanos;
+        long firstBatchNanos;
+
+        /**
+         * Books on the page, -1 if the query failed
+         */
+        int books;
+        RuntimeException crash;
+    }
+
+    /**
+     * Outcome of a whole run.
+     */
+    public static class Report {
+        final String name;
+        final List<Long> latencies = new ArrayList<>();
+        final List<Long> firstBatchLatencies = new ArrayList<>();
+        final List<RuntimeException> crashes = new ArrayList<>();
+
+        int succeeded;
+        int failed;
+        int minBooks = Integer.MAX_VALUE;
+        long elapsedNanos;
+        long heapBefore;
+        long heapPeak;
+        long budgetUsedBytes;
+        int requests;
+        int serverErrors;
+        int throttled;
+
+        Report(String nname) {
+            name = nname;
+        }
+
+        void add(Sample sample) {
+            latencies.add(sample.nanos);
+            if (sample.firstBatchNanos > 0) {
+                firstBatchLatencies.add(sample.firstBatchNanos);
+            }
+            if (sample.crash != null) {
+                crashes.add(sample.crash);
+            }
+            if (sample.books < 0) {
+                failed++;
+            } else {
+                succeeded++;
+                minBooks = Math.min(minBooks, sample.books);
+            }
+        }
+
+        public double throughputPerSecond() {
+            return elapsedNanos == 0 ? 0 : latencies.size() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Returns the given percentile of the query latencies in milliseconds.
+         */
+        public long percentileMillis(double percentile) {
+            return percentileMillis(latencies, percentile);
+        }
+
+        /**
+         * Returns the given percentile of the times to the first batch in milliseconds,
+         * 0 if there were no batches.
+         */
+        public long firstBatchPercentileMillis(double percentile) {
+            return percentileMillis(firstBatchLatencies, percentile);
+        }
+
+        private static long percentileMillis(List<Long> nanos, double percentile) {
+            if (nanos.isEmpty()) {
+                return 0;
+            }
+            List<Long> sorted = new ArrayList<>(nanos);
+            Collections.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(0, index)));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d queries in %d ms, %.1f queries/s%n"
+                            + "  latency ms p50 %d, p95 %d, p99 %d, max %d; first batch p50 %d, p95 %d%n"
+                            + "  %d succeeded, %d failed, %d crashed; server saw %d requests, "
+                            + "%d errors, %d throttled%n"
+                            + "  heap %d KB before, %d KB peak; caches hold %d KB of the budget",
+                    name, latencies.size(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    throughputPerSecond(),
+                    percentileMillis(50), percentileMillis(95), percentileMillis(99),
+                    percentileMillis(100), firstBatchPercentileMillis(50), firstBatchPercentileMillis(95),
+                    succeeded, failed, crashes.size(), requests, serverErrors, throttled,
+                    heapBefore / 1024, heapPeak / 1024, budgetUsedBytes / 1024);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.android.bookfinder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Local stand-in for the Google Books API, for load tests of the fetch pipeline. It replays
+ * the recorded responses in the books-api test resources, chosen by the request:
+ * <ul>
+ * <li>{@code volumes?startIndex=N} from volumes/startIndex-N.json, a page without items
+ * past the recorded ones, like the API ends its results,</li>
+ * <li>{@code volumes/{id}} from volume/{id}.json, 404 Not Found for other ids.</li>
+ * </ul>
+ * It can be made to misbehave like the real service does under load:
+ * <ul>
+ * <li>responses take a time drawn from a {@link Latency} distribution,</li>
+ * <li>a share of the requests fails with a server error,</li>
+ * <li>requests above a rate limit are throttled with 429 Too Many Requests,</li>
+ * <li>bodies trickle out in small chunks with pauses in between.</li>
+ * </ul>
+ * Configure it before {@link #start()}.
+ */
+public class MockBooksServer {
+    private static final String VOLUMES_PATH = "/books/v1/volumes";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Recordings read so far by their resource name, the empty array for missing ones
+     */
+    private final ConcurrentMap<String, byte[]> recordings = new ConcurrentHashMap<>();
+
+    private final Random random = new Random(42);
+    private final MockWebServer server = new MockWebServer();
+
+    private Latency latency = Latency.fixed(0);
+    private double errorRate;
+    private int maxRequestsPerSecond;
+    private int dripChunkBytes;
+    private long dripDelayMillis;
+
+    /**
+     * Start of the current one second throttling window and the requests admitted in it
+     */
+    private long windowStart;
+    private int windowRequests;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger served = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger throttled = new AtomicInteger();
+
+    public MockBooksServer setLatency(Latency llatency) {
+        latency = llatency;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests, from 0 to 1, that fail with 500 Internal Server Error.
+     */
+    public MockBooksServer setErrorRate(double rate) {
+        errorRate = rate;
+        return this;
+    }
+
+    /**
+     * Sets the number of requests per second above which requests are answered with
+     * 429 Too Many Requests, 0 for no limit.
+     */
+    public MockBooksServer setMaxRequestsPerSecond(int max) {
+        maxRequestsPerSecond = max;
+        return this;
+    }
+
+    /**
+     * Makes the server send bodies in chunks of the given size, pausing between them.
+     */
+    public MockBooksServer setSlowDrip(int chunkBytes, long delayMillis) {
+        dripChunkBytes = chunkBytes;
+        dripDelayMillis = delayMillis;
+        return this;
+    }
+
+    public void start() throws IOException {
+        // MockWebServer serves every connection on a thread of its own, so slow
+        // responses don't hold up the others
+        server.setDispatcher(new BooksDispatcher());
+        server.start();
+    }
+
+    public void stop() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Returns the URL of a query for the given search term, in the form BookActivity uses.
+     */
+    public String queryUrl(String query, int maxResults) {
+        return server.url(VOLUMES_PATH).newBuilder()
+                .addQueryParameter("q", query)
+                .addQueryParameter("maxResults", String.valueOf(maxResults))
+                .build()
+                .toString();
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getServedCount() {
+        return served.get();
+    }
+
+    public int getErrorCount() {
+        return errors.get();
+    }
+
+    public int getThrottledCount() {
+        return throttled.get();
+    }
+
+    private synchronized boolean admit() {
+        if (maxRequestsPerSecond <= 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= 1000) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+        return ++windowRequests <= maxRequestsPerSecond;
+    }
+
+    private synchronized boolean shouldFail() {
+        return random.nextDouble() < errorRate;
+    }
+
+    private synchronized long nextLatencyMillis() {
+        return latency.nextMillis(random);
+    }
+
+    private class BooksDispatcher extends Dispatcher {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            requests.incrementAndGet();
+            if (!admit()) {
+                throttled.incrementAndGet();
+                return json(429, error(429, "Rate Limit Exceeded")).setHeader("Retry-After", "1");
+            }
+
+            Thread.sleep(nextLatencyMillis());
+
+            if (shouldFail()) {
+                errors.incrementAndGet();
+                return json(500, error(500, "Backend Error"));
+            }
+
+            HttpUrl url = request.getRequestUrl();
+            byte[] body = url.encodedPath().startsWith(VOLUMES_PATH + "/")
+                    ? volume(url.encodedPath().substring(VOLUMES_PATH.length() + 1))
+                    : volumes(url.queryParameter("startIndex"));
+            if (body == null) {
+                return json(404, error(404, "The volume ID could not be found."));
+            }
+            served.incrementAndGet();
+            return json(200, body);
+        }
+
+        private byte[] volumes(String startIndex) {
+            byte[] page = recording("volumes/startIndex-" + (startIndex == null ? "0" : startIndex) + ".json");
+            if (page != null) {
+                return page;
+            }
+            // Past the recorded pages the results end, the API leaves out the items then
+            return "{\"kind\": \"books#volumes\", \"totalItems\": 0}".getBytes(UTF_8);
+        }
+
+        private byte[] volume(String id) {
+            return recording("volume/" + id + ".json");
+        }
+
+        private MockResponse json(int status, byte[] body) {
+            MockResponse response = new MockResponse()
+                    .setResponseCode(status)
+                    .setHeader("Content-Type", "application/json; charset=UTF-8");
+            if (status != 200 || dripChunkBytes <= 0) {
+                return response.setBody(new Buffer().write(body));
+            }
+            // Dripped bodies are chunked, like the API's, so the client can't know when they end
+            return response.setChunkedBody(new Buffer().write(body), dripChunkBytes)
+                    .throttleBody(dripChunkBytes, dripDelayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private byte[] error(int code, String message) {
+            String json = "{\"error\": {\"code\": " + code + ", \"message\": \"" + message + "\"}}";
+            return json.getBytes(UTF_8);
+        }
+    }
+
+    /**
+     * Returns the recorded response with the given name below books-api, or null if
+     * there is none.
+     */
+    private byte[] recording(String name) {
+        byte[] body = recordings.get(name);
+        if (body == null) {
+            body = readRecording(name);
+            recordings.putIfAbsent(name, body);
+        }
+        return body.length == 0 ? null : body;
+    }
+
+    private static byte[] readRecording(String name) {
+        InputStream in = MockBooksServer.class.getClassLoader().getResourceAsStream("books-api/" + name);
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read the recorded response books-api/" + name, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Read already
+            }
+        }
+    }
+
+    /**
+     * Distribution of the time the server takes before it answers.
+     */
+    public abstract static class Latency {
+
+        abstract long nextMillis(Random random);
+
+        public static Latency fixed(final long millis) {
+            return new Latency() {
+                @Override
+                long nextMillis(Random random) {
+                    return millis;
+                }
+            };
+        }
+
+        public static Latency uniform(final long minMillis, final long maxMillis) {
+            return new Latency() {
+                @Override
+                long nextMillis(Random random) {
+                    return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+                }
+            };
+        }
+
+        /**
+         * Log-normal around the given median, the long tail that real services have.
+         * A sigma of 0.5 puts the 99th percentile at about three times the median.
+         */
+        public static Latency logNormal(final long medianMillis, final double sigma) {
+            return new Latency() {
+                @Override
+                long nextMillis(Random random) {
+                    return Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+                }
+            };
+        }
+    }
+}